@@ -16,6 +16,11 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Base64;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -33,12 +38,14 @@ import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.lang.reflect.Method;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 
 public class BleManager extends NativeBleManagerSpec {
 
@@ -71,6 +78,15 @@ public class BleManager extends NativeBleManagerSpec {
     private BondRequest bondRequest;
     private BondRequest removeBondRequest;
     private boolean forceLegacy;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    /**
+     * Serial threads shared by the peripherals when the gattThreads start option is set, null when the GATT
+     * work runs on the main looper.
+     */
+    private HandlerThread[] gattThreads;
+    // default time (ms) a peripheral command may run before it is failed, 0 disables the watchdog
+    private volatile long commandTimeout = 0;
+    private Handler[] gattHandlers;
     /**
      * Used for companion scanning, if supported.
      */
@@ -209,7 +225,7 @@ public class BleManager extends NativeBleManagerSpec {
     }
 
     // key is the MAC Address
-    private final Map<String, Peripheral> peripherals = new LinkedHashMap<>();
+    private final PeripheralRegistry peripherals = new PeripheralRegistry();
     // scan session id
 
     public BleManager(ReactApplicationContext reactContext) {
@@ -262,6 +278,14 @@ public class BleManager extends NativeBleManagerSpec {
             forceLegacy = options.getBoolean("forceLegacy");
         }
 
+        commandTimeout = options.hasKey("commandTimeout") ? options.getInt("commandTimeout") : 0;
+        peripherals.configure(
+                options.hasKey("maxPeripherals") ? options.getInt("maxPeripherals") : 0,
+                options.hasKey("peripheralTtl") ? (long) options.getDouble("peripheralTtl") : 0);
+        if (options.hasKey("gattThreads") && options.getInt("gattThreads") > 0 && gattThreads == null) {
+            startGattThreads(options.getInt("gattThreads"));
+        }
+
         scanManager = new DefaultScanManager(reactContext, this);
 
         IntentFilter filter = new IntentFilter(BluetoothAdapter.ACTION_STATE_CHANGED);
@@ -282,6 +306,46 @@ public class BleManager extends NativeBleManagerSpec {
         Log.d(LOG_TAG, "BleManager initialized");
     }
 
+    private synchronized void startGattThreads(int count) {
+        gattThreads = new HandlerThread[count];
+        gattHandlers = new Handler[count];
+        for (int i = 0; i < count; i++) {
+            gattThreads[i] = new HandlerThread("BleManagerGatt-" + i, Process.THREAD_PRIORITY_FOREGROUND);
+            gattThreads[i].start();
+            gattHandlers[i] = new Handler(gattThreads[i].getLooper());
+        }
+        // a peripheral keeps the handler it was created with, the idle ones known so far are dropped and
+        // created again on the pool when they are next discovered or connected
+        peripherals.removeDisconnected();
+        Log.d(LOG_TAG, "Started " + count + " GATT threads");
+    }
+
+    private synchronized void stopGattThreads() {
+        if (gattThreads == null) {
+            return;
+        }
+        for (HandlerThread thread : gattThreads) {
+            thread.quitSafely();
+        }
+        gattThreads = null;
+        gattHandlers = null;
+    }
+
+    public long getCommandTimeout() {
+        return commandTimeout;
+    }
+
+    /**
+     * Returns the handler a peripheral runs its GATT callbacks and command queue on. A peripheral always gets
+     * the same thread, so its work stays ordered while different peripherals proceed in parallel.
+     */
+    public synchronized Handler getPeripheralHandler(String address) {
+        if (gattHandlers == null) {
+            return mainHandler;
+        }
+        return gattHandlers[(address.hashCode() & Integer.MAX_VALUE) % gattHandlers.length];
+    }
+
     @ReactMethod
     public void isStarted(Callback callback) {
         Log.d(LOG_TAG, "isStarted");
@@ -328,15 +392,7 @@ public class BleManager extends NativeBleManagerSpec {
             return;
         }
 
-        synchronized (peripherals) {
-            for (Iterator<Map.Entry<String, Peripheral>> iterator = peripherals.entrySet().iterator(); iterator
-                    .hasNext(); ) {
-                Map.Entry<String, Peripheral> entry = iterator.next();
-                if (!(entry.getValue().isConnected() || entry.getValue().isConnecting())) {
-                    iterator.remove();
-                }
-            }
-        }
+        peripherals.removeDisconnected();
 
         if (scanManager != null)
             scanManager.scan(scanningOptions, callback);
@@ -461,18 +517,19 @@ public class BleManager extends NativeBleManagerSpec {
             return;
         }
         // Validate UUID formats to prevent crash
-        if (!UUIDHelper.isValidBLEUUID(serviceUUID)) {
+        UUID service = UUIDHelper.tryParse(serviceUUID);
+        if (service == null) {
             callback.invoke("Invalid service UUID format: " + serviceUUID);
             return;
         }
-        if (!UUIDHelper.isValidBLEUUID(characteristicUUID)) {
+        UUID characteristic = UUIDHelper.tryParse(characteristicUUID);
+        if (characteristic == null) {
             callback.invoke("Invalid characteristic UUID format: " + characteristicUUID);
             return;
         }
         Peripheral peripheral = peripherals.get(deviceUUID);
         if (peripheral != null) {
-            peripheral.registerNotify(UUIDHelper.uuidFromString(serviceUUID),
-                    UUIDHelper.uuidFromString(characteristicUUID), (int) bufferLength, callback);
+            peripheral.registerNotify(service, characteristic, (int) bufferLength, callback);
         } else
             callback.invoke("Peripheral not found");
     }
@@ -485,19 +542,98 @@ public class BleManager extends NativeBleManagerSpec {
             return;
         }
         // Validate UUID formats to prevent crash
-        if (!UUIDHelper.isValidBLEUUID(serviceUUID)) {
+        UUID service = UUIDHelper.tryParse(serviceUUID);
+        if (service == null) {
             callback.invoke("Invalid service UUID format: " + serviceUUID);
             return;
         }
-        if (!UUIDHelper.isValidBLEUUID(characteristicUUID)) {
+        UUID characteristic = UUIDHelper.tryParse(characteristicUUID);
+        if (characteristic == null) {
             callback.invoke("Invalid characteristic UUID format: " + characteristicUUID);
             return;
         }
         Peripheral peripheral = peripherals.get(deviceUUID);
         if (peripheral != null) {
             if (peripheral.isConnected()) {
-                peripheral.registerNotify(UUIDHelper.uuidFromString(serviceUUID),
-                        UUIDHelper.uuidFromString(characteristicUUID), 1, callback);
+                peripheral.registerNotify(service, characteristic, 1, callback);
+            } else {
+                callback.invoke("Peripheral not connected", null);
+            }
+        } else
+            callback.invoke("Peripheral not found");
+    }
+
+    @ReactMethod
+    public void startNotificationWithOptions(String deviceUUID, String serviceUUID, String characteristicUUID,
+                                             ReadableMap options, Callback callback) {
+        Log.d(LOG_TAG, "startNotificationWithOptions");
+        if (serviceUUID == null || characteristicUUID == null) {
+            callback.invoke("ServiceUUID and characteristicUUID required.");
+            return;
+        }
+        // Validate UUID formats to prevent crash
+        UUID service = UUIDHelper.tryParse(serviceUUID);
+        if (service == null) {
+            callback.invoke("Invalid service UUID format: " + serviceUUID);
+            return;
+        }
+        UUID characteristic = UUIDHelper.tryParse(characteristicUUID);
+        if (characteristic == null) {
+            callback.invoke("Invalid characteristic UUID format: " + characteristicUUID);
+            return;
+        }
+        NotifyBufferContainer buffer = null;
+        if (options.hasKey("bufferLength") && options.hasKey("batch")) {
+            callback.invoke("bufferLength and batch can not be used together");
+            return;
+        }
+        if (options.hasKey("bufferLength") && options.getInt("bufferLength") > 1) {
+            NotifyBufferContainer.OverflowPolicy overflowPolicy = NotifyBufferContainer.OverflowPolicy.DROP_OLDEST;
+            if (options.hasKey("overflow")) {
+                String overflow = options.getString("overflow");
+                if ("dropNewest".equals(overflow)) {
+                    overflowPolicy = NotifyBufferContainer.OverflowPolicy.DROP_NEWEST;
+                } else if ("block".equals(overflow)) {
+                    overflowPolicy = NotifyBufferContainer.OverflowPolicy.BLOCK;
+                } else if (!"dropOldest".equals(overflow)) {
+                    callback.invoke("Invalid overflow: " + overflow);
+                    return;
+                }
+            }
+            buffer = new NotifyBufferContainer(options.getInt("bufferLength"), overflowPolicy);
+        } else if (options.hasKey("batch")) {
+            ReadableMap batch = options.getMap("batch");
+            int maxCount = 32;
+            int maxBytes = 4096;
+            int maxLatency = 16;
+            if (batch != null && batch.hasKey("maxCount")) {
+                maxCount = batch.getInt("maxCount");
+            }
+            if (batch != null && batch.hasKey("maxBytes")) {
+                maxBytes = batch.getInt("maxBytes");
+            }
+            if (batch != null && batch.hasKey("maxLatency")) {
+                maxLatency = batch.getInt("maxLatency");
+            }
+            if (maxCount < 1 || maxBytes < 1 || maxLatency < 0) {
+                callback.invoke("Invalid batch options");
+                return;
+            }
+            buffer = new NotifyBatchContainer(maxCount, maxBytes, maxLatency);
+        }
+        String valueFormat = Peripheral.VALUE_FORMAT_ARRAY;
+        if (options.hasKey("valueFormat")) {
+            valueFormat = options.getString("valueFormat");
+            if (!Peripheral.VALUE_FORMAT_ARRAY.equals(valueFormat)
+                    && !Peripheral.VALUE_FORMAT_BASE64.equals(valueFormat)) {
+                callback.invoke("Invalid valueFormat: " + valueFormat);
+                return;
+            }
+        }
+        Peripheral peripheral = peripherals.get(deviceUUID);
+        if (peripheral != null) {
+            if (peripheral.isConnected()) {
+                peripheral.registerNotify(service, characteristic, buffer, valueFormat, callback);
             } else {
                 callback.invoke("Peripheral not connected", null);
             }
@@ -513,19 +649,64 @@ public class BleManager extends NativeBleManagerSpec {
             return;
         }
         // Validate UUID formats to prevent crash
-        if (!UUIDHelper.isValidBLEUUID(serviceUUID)) {
+        UUID service = UUIDHelper.tryParse(serviceUUID);
+        if (service == null) {
             callback.invoke("Invalid service UUID format: " + serviceUUID);
             return;
         }
-        if (!UUIDHelper.isValidBLEUUID(characteristicUUID)) {
+        UUID characteristic = UUIDHelper.tryParse(characteristicUUID);
+        if (characteristic == null) {
             callback.invoke("Invalid characteristic UUID format: " + characteristicUUID);
             return;
         }
         Peripheral peripheral = peripherals.get(deviceUUID);
         if (peripheral != null) {
             if (peripheral.isConnected()) {
-                peripheral.removeNotify(UUIDHelper.uuidFromString(serviceUUID),
-                        UUIDHelper.uuidFromString(characteristicUUID), callback);
+                peripheral.removeNotify(service, characteristic, callback);
+            } else {
+                callback.invoke("Peripheral not connected", null);
+            }
+        } else
+            callback.invoke("Peripheral not found");
+    }
+
+    @ReactMethod
+    public void writeWithOptions(String deviceUUID, String serviceUUID, String characteristicUUID,
+                                 ReadableArray message, double maxByteSize, ReadableMap options, Callback callback) {
+        Log.d(LOG_TAG, "Write with options to: " + deviceUUID);
+        if (serviceUUID == null || characteristicUUID == null) {
+            callback.invoke("ServiceUUID and characteristicUUID required.");
+            return;
+        }
+        // Validate UUID formats to prevent crash
+        UUID service = UUIDHelper.tryParse(serviceUUID);
+        if (service == null) {
+            callback.invoke("Invalid service UUID format: " + serviceUUID);
+            return;
+        }
+        UUID characteristic = UUIDHelper.tryParse(characteristicUUID);
+        if (characteristic == null) {
+            callback.invoke("Invalid characteristic UUID format: " + characteristicUUID);
+            return;
+        }
+        boolean reliable = options.hasKey("reliable") && options.getBoolean("reliable");
+        PeripheralCommand.Options commandOptions = PeripheralCommand.Options.fromReadableMap(options,
+                PeripheralCommand.Priority.INTERACTIVE);
+        Peripheral peripheral = peripherals.get(deviceUUID);
+        if (peripheral != null) {
+            if (peripheral.isConnected()) {
+                byte[] decoded = new byte[message.size()];
+                for (int i = 0; i < message.size(); i++) {
+                    decoded[i] = Integer.valueOf(message.getInt(i)).byteValue();
+                }
+                Log.d(LOG_TAG, (reliable ? "Reliable write of " : "Write of ") + decoded.length + " bytes");
+                if (reliable) {
+                    peripheral.reliableWrite(service, characteristic, decoded, (int) maxByteSize, callback,
+                            commandOptions);
+                } else {
+                    peripheral.write(service, characteristic, decoded, (int) maxByteSize, null, callback,
+                            BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT, commandOptions);
+                }
             } else {
                 callback.invoke("Peripheral not connected", null);
             }
@@ -542,11 +723,13 @@ public class BleManager extends NativeBleManagerSpec {
             return;
         }
         // Validate UUID formats to prevent crash
-        if (!UUIDHelper.isValidBLEUUID(serviceUUID)) {
+        UUID service = UUIDHelper.tryParse(serviceUUID);
+        if (service == null) {
             callback.invoke("Invalid service UUID format: " + serviceUUID);
             return;
         }
-        if (!UUIDHelper.isValidBLEUUID(characteristicUUID)) {
+        UUID characteristic = UUIDHelper.tryParse(characteristicUUID);
+        if (characteristic == null) {
             callback.invoke("Invalid characteristic UUID format: " + characteristicUUID);
             return;
         }
@@ -558,7 +741,7 @@ public class BleManager extends NativeBleManagerSpec {
                     decoded[i] = Integer.valueOf(message.getInt(i)).byteValue();
                 }
                 Log.d(LOG_TAG, "Message(" + decoded.length + "): " + bytesToHex(decoded));
-                peripheral.write(UUIDHelper.uuidFromString(serviceUUID), UUIDHelper.uuidFromString(characteristicUUID),
+                peripheral.write(service, characteristic,
                         decoded, (int) maxByteSize, null, callback, BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
             } else {
                 callback.invoke("Peripheral not connected", null);
@@ -576,11 +759,13 @@ public class BleManager extends NativeBleManagerSpec {
             return;
         }
         // Validate UUID formats to prevent crash
-        if (!UUIDHelper.isValidBLEUUID(serviceUUID)) {
+        UUID service = UUIDHelper.tryParse(serviceUUID);
+        if (service == null) {
             callback.invoke("Invalid service UUID format: " + serviceUUID);
             return;
         }
-        if (!UUIDHelper.isValidBLEUUID(characteristicUUID)) {
+        UUID characteristic = UUIDHelper.tryParse(characteristicUUID);
+        if (characteristic == null) {
             callback.invoke("Invalid characteristic UUID format: " + characteristicUUID);
             return;
         }
@@ -592,7 +777,7 @@ public class BleManager extends NativeBleManagerSpec {
                     decoded[i] = Integer.valueOf(message.getInt(i)).byteValue();
                 }
                 Log.d(LOG_TAG, "Message(" + decoded.length + "): " + bytesToHex(decoded));
-                peripheral.write(UUIDHelper.uuidFromString(serviceUUID), UUIDHelper.uuidFromString(characteristicUUID),
+                peripheral.write(service, characteristic,
                         decoded, (int) maxByteSize, (int) queueSleepTime, callback, BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE);
             } else {
                 callback.invoke("Peripheral not connected", null);
@@ -601,6 +786,60 @@ public class BleManager extends NativeBleManagerSpec {
             callback.invoke("Peripheral not found");
     }
 
+    @ReactMethod
+    public void writeMany(ReadableArray deviceUUIDs, String serviceUUID, String characteristicUUID,
+                          ReadableArray message, ReadableMap options, Callback callback) {
+        Log.d(LOG_TAG, "Write to " + deviceUUIDs.size() + " peripherals");
+        if (serviceUUID == null || characteristicUUID == null) {
+            callback.invoke("ServiceUUID and characteristicUUID required.");
+            return;
+        }
+        UUID service = UUIDHelper.tryParse(serviceUUID);
+        if (service == null) {
+            callback.invoke("Invalid service UUID format: " + serviceUUID);
+            return;
+        }
+        UUID characteristic = UUIDHelper.tryParse(characteristicUUID);
+        if (characteristic == null) {
+            callback.invoke("Invalid characteristic UUID format: " + characteristicUUID);
+            return;
+        }
+        if (deviceUUIDs.size() == 0) {
+            callback.invoke("At least one peripheral required.");
+            return;
+        }
+
+        // decoded once for all the peripherals
+        byte[] decoded = new byte[message.size()];
+        for (int i = 0; i < message.size(); i++) {
+            decoded[i] = Integer.valueOf(message.getInt(i)).byteValue();
+        }
+        int writeType = options.hasKey("withoutResponse") && options.getBoolean("withoutResponse")
+                ? BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE
+                : BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT;
+        int maxByteSize = options.hasKey("maxByteSize") ? options.getInt("maxByteSize") : 0;
+        PeripheralCommand.Options commandOptions = PeripheralCommand.Options.fromReadableMap(options,
+                PeripheralCommand.Priority.INTERACTIVE);
+
+        String[] addresses = new String[deviceUUIDs.size()];
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = deviceUUIDs.getString(i);
+        }
+        FanOutWrite fanOut = new FanOutWrite(addresses, callback);
+        // every peripheral has its own command queue, so the writes only wait for their own peripheral
+        for (int i = 0; i < addresses.length; i++) {
+            Peripheral peripheral = peripherals.get(addresses[i]);
+            if (peripheral == null) {
+                fanOut.complete(i, "Peripheral not found");
+            } else if (!peripheral.isConnected()) {
+                fanOut.complete(i, "Peripheral not connected");
+            } else {
+                peripheral.write(service, characteristic, decoded, maxByteSize, 0, fanOut.callbackFor(i), writeType,
+                        commandOptions);
+            }
+        }
+    }
+
     @ReactMethod
     public void read(String deviceUUID, String serviceUUID, String characteristicUUID, Callback callback) {
         Log.d(LOG_TAG, "Read from: " + deviceUUID);
@@ -609,18 +848,20 @@ public class BleManager extends NativeBleManagerSpec {
             return;
         }
         // Validate UUID formats to prevent crash
-        if (!UUIDHelper.isValidBLEUUID(serviceUUID)) {
+        UUID service = UUIDHelper.tryParse(serviceUUID);
+        if (service == null) {
             callback.invoke("Invalid service UUID format: " + serviceUUID);
             return;
         }
-        if (!UUIDHelper.isValidBLEUUID(characteristicUUID)) {
+        UUID characteristic = UUIDHelper.tryParse(characteristicUUID);
+        if (characteristic == null) {
             callback.invoke("Invalid characteristic UUID format: " + characteristicUUID);
             return;
         }
         Peripheral peripheral = peripherals.get(deviceUUID);
         if (peripheral != null) {
             if (peripheral.isConnected()) {
-                peripheral.read(UUIDHelper.uuidFromString(serviceUUID), UUIDHelper.uuidFromString(characteristicUUID),
+                peripheral.read(service, characteristic,
                         callback);
             } else {
                 callback.invoke("Peripheral not connected", null);
@@ -629,6 +870,68 @@ public class BleManager extends NativeBleManagerSpec {
             callback.invoke("Peripheral not found", null);
     }
 
+    @ReactMethod
+    public void readMany(String deviceUUID, ReadableArray characteristics, Callback callback) {
+        Log.d(LOG_TAG, "Read many from: " + deviceUUID);
+        List<GattTransaction.Operation> operations = new ArrayList<>(characteristics.size());
+        for (int i = 0; i < characteristics.size(); i++) {
+            ReadableMap item = characteristics.getMap(i);
+            String serviceUUID = item.hasKey("service") ? item.getString("service") : null;
+            String characteristicUUID = item.hasKey("characteristic") ? item.getString("characteristic") : null;
+            if (serviceUUID == null || characteristicUUID == null) {
+                callback.invoke("Service and characteristic required.", null);
+                return;
+            }
+            UUID service = UUIDHelper.tryParse(serviceUUID);
+            if (service == null) {
+                callback.invoke("Invalid service UUID format: " + serviceUUID, null);
+                return;
+            }
+            UUID characteristic = UUIDHelper.tryParse(characteristicUUID);
+            if (characteristic == null) {
+                callback.invoke("Invalid characteristic UUID format: " + characteristicUUID, null);
+                return;
+            }
+            operations.add(new GattTransaction.Operation(GattTransaction.Type.READ,
+                    service, characteristic, null, null));
+        }
+        Peripheral peripheral = peripherals.get(deviceUUID);
+        if (peripheral != null) {
+            if (peripheral.isConnected()) {
+                // a failed read does not stop the others
+                peripheral.runTransaction(new GattTransaction(operations, true, callback));
+            } else {
+                callback.invoke("Peripheral not connected", null);
+            }
+        } else
+            callback.invoke("Peripheral not found", null);
+    }
+
+    @ReactMethod
+    public void transaction(String deviceUUID, ReadableArray operations, ReadableMap options, Callback callback) {
+        Log.d(LOG_TAG, "Transaction on: " + deviceUUID);
+        List<GattTransaction.Operation> parsedOperations;
+        try {
+            parsedOperations = GattTransaction.parseOperations(operations);
+        } catch (IllegalArgumentException e) {
+            callback.invoke("Invalid transaction: " + e.getMessage(), null);
+            return;
+        }
+        boolean continueOnError = options.hasKey("continueOnError") && options.getBoolean("continueOnError");
+        PeripheralCommand.Options commandOptions = PeripheralCommand.Options.fromReadableMap(options,
+                PeripheralCommand.Priority.INTERACTIVE);
+        Peripheral peripheral = peripherals.get(deviceUUID);
+        if (peripheral != null) {
+            if (peripheral.isConnected()) {
+                peripheral.runTransaction(new GattTransaction(parsedOperations, continueOnError, callback),
+                        commandOptions);
+            } else {
+                callback.invoke("Peripheral not connected", null);
+            }
+        } else
+            callback.invoke("Peripheral not found", null);
+    }
+
     @ReactMethod
     public void readDescriptor(String deviceUUID, String serviceUUID, String characteristicUUID, String descriptorUUID, Callback callback) {
         Log.d(LOG_TAG, "Read descriptor from: " + deviceUUID);
@@ -637,15 +940,18 @@ public class BleManager extends NativeBleManagerSpec {
             return;
         }
         // Validate UUID formats to prevent crash
-        if (!UUIDHelper.isValidBLEUUID(serviceUUID)) {
+        UUID service = UUIDHelper.tryParse(serviceUUID);
+        if (service == null) {
             callback.invoke("Invalid service UUID format: " + serviceUUID, null);
             return;
         }
-        if (!UUIDHelper.isValidBLEUUID(characteristicUUID)) {
+        UUID characteristic = UUIDHelper.tryParse(characteristicUUID);
+        if (characteristic == null) {
             callback.invoke("Invalid characteristic UUID format: " + characteristicUUID, null);
             return;
         }
-        if (!UUIDHelper.isValidBLEUUID(descriptorUUID)) {
+        UUID descriptor = UUIDHelper.tryParse(descriptorUUID);
+        if (descriptor == null) {
             callback.invoke("Invalid descriptor UUID format: " + descriptorUUID, null);
             return;
         }
@@ -657,9 +963,9 @@ public class BleManager extends NativeBleManagerSpec {
             callback.invoke("Peripheral not connected", null);
         } else {
             peripheral.readDescriptor(
-                    UUIDHelper.uuidFromString(serviceUUID),
-                    UUIDHelper.uuidFromString(characteristicUUID),
-                    UUIDHelper.uuidFromString(descriptorUUID),
+                    service,
+                    characteristic,
+                    descriptor,
                     callback);
         }
     }
@@ -672,15 +978,18 @@ public class BleManager extends NativeBleManagerSpec {
             return;
         }
         // Validate UUID formats to prevent crash
-        if (!UUIDHelper.isValidBLEUUID(serviceUUID)) {
+        UUID service = UUIDHelper.tryParse(serviceUUID);
+        if (service == null) {
             callback.invoke("Invalid service UUID format: " + serviceUUID, null);
             return;
         }
-        if (!UUIDHelper.isValidBLEUUID(characteristicUUID)) {
+        UUID characteristic = UUIDHelper.tryParse(characteristicUUID);
+        if (characteristic == null) {
             callback.invoke("Invalid characteristic UUID format: " + characteristicUUID, null);
             return;
         }
-        if (!UUIDHelper.isValidBLEUUID(descriptorUUID)) {
+        UUID descriptor = UUIDHelper.tryParse(descriptorUUID);
+        if (descriptor == null) {
             callback.invoke("Invalid descriptor UUID format: " + descriptorUUID, null);
             return;
         }
@@ -696,17 +1005,40 @@ public class BleManager extends NativeBleManagerSpec {
                 decoded[i] = Integer.valueOf(message.getInt(i)).byteValue();
             }
             Log.d(LOG_TAG, "Message(" + decoded.length + "): " + bytesToHex(decoded));
-            peripheral.writeDescriptor(UUIDHelper.uuidFromString(serviceUUID), UUIDHelper.uuidFromString(characteristicUUID), UUIDHelper.uuidFromString(descriptorUUID), decoded, callback);
+            peripheral.writeDescriptor(service, characteristic, descriptor, decoded, callback);
         }
     }
 
     @ReactMethod
     public void retrieveServices(String deviceUUID, ReadableArray services, Callback callback) {
+        retrieveServices(deviceUUID, services, false, callback);
+    }
+
+    @ReactMethod
+    public void retrieveServicesWithOptions(String deviceUUID, ReadableArray services, ReadableMap options,
+                                            Callback callback) {
+        retrieveServices(deviceUUID, services, options.hasKey("slim") && options.getBoolean("slim"), callback);
+    }
+
+    private void retrieveServices(String deviceUUID, ReadableArray services, boolean slim, Callback callback) {
         Log.d(LOG_TAG, "Retrieve services from: " + deviceUUID);
+        Set<UUID> serviceFilter = null;
+        if (services != null && services.size() > 0) {
+            serviceFilter = new HashSet<>();
+            for (int i = 0; i < services.size(); i++) {
+                String serviceUUID = services.getString(i);
+                UUID service = UUIDHelper.tryParse(serviceUUID);
+                if (service == null) {
+                    callback.invoke("Invalid service UUID format: " + serviceUUID, null);
+                    return;
+                }
+                serviceFilter.add(service);
+            }
+        }
         Peripheral peripheral = peripherals.get(deviceUUID);
         if (peripheral != null) {
             if (peripheral.isConnected()) {
-                peripheral.retrieveServices(callback);
+                peripheral.retrieveServices(serviceFilter, slim, callback);
             } else {
                 callback.invoke("Peripheral not connected", null);
             }
@@ -743,19 +1075,13 @@ public class BleManager extends NativeBleManagerSpec {
     }
 
     public Peripheral savePeripheral(BluetoothDevice device) {
-        String address = device.getAddress();
-        synchronized (peripherals) {
-            if (!peripherals.containsKey(address)) {
-                Peripheral peripheral;
-                if (!forceLegacy) {
-                    peripheral = new DefaultPeripheral(device, this);
-                } else {
-                    peripheral = new Peripheral(device, this);
-                }
-                peripherals.put(device.getAddress(), peripheral);
+        return peripherals.getOrCreate(device.getAddress(), address -> {
+            if (!forceLegacy) {
+                return new DefaultPeripheral(device, this);
+            } else {
+                return new Peripheral(device, this);
             }
-        }
-        return peripherals.get(address);
+        });
     }
 
     public Peripheral getPeripheral(BluetoothDevice device) {
@@ -764,10 +1090,7 @@ public class BleManager extends NativeBleManagerSpec {
     }
 
     public Peripheral savePeripheral(Peripheral peripheral) {
-        synchronized (peripherals) {
-            peripherals.put(peripheral.getDevice().getAddress(), peripheral);
-        }
-        return peripheral;
+        return peripherals.put(peripheral.getDevice().getAddress(), peripheral);
     }
 
     @ReactMethod
@@ -821,12 +1144,21 @@ public class BleManager extends NativeBleManagerSpec {
 
     @Override
     public void getMaximumWriteValueLengthForWithoutResponse(String peripheralUUID, Callback callback) {
-        callback.invoke("Not implemented");
+        getMaximumWriteValueLength(peripheralUUID, BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE, callback);
     }
 
     @Override
     public void getMaximumWriteValueLengthForWithResponse(String deviceUUID, Callback callback) {
-        callback.invoke("Not implemented");
+        getMaximumWriteValueLength(deviceUUID, BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT, callback);
+    }
+
+    private void getMaximumWriteValueLength(String deviceUUID, int writeType, Callback callback) {
+        Peripheral peripheral = peripherals.get(deviceUUID);
+        if (peripheral != null && peripheral.isConnected()) {
+            callback.invoke(null, peripheral.getMaximumWriteValueLength(writeType));
+        } else {
+            callback.invoke("Peripheral not found or not connected");
+        }
     }
 
     @ReactMethod
@@ -840,24 +1172,16 @@ public class BleManager extends NativeBleManagerSpec {
     };
 
     private void clearPeripherals() {
-        if (!peripherals.isEmpty()) {
-            synchronized (peripherals) {
-                peripherals.clear();
-            }
-        }
+        peripherals.clear();
     }
 
     private void disconnectPeripherals() {
-        if (!peripherals.isEmpty()) {
-            synchronized (peripherals) {
-                for (Peripheral peripheral : peripherals.values()) {
-                    if (peripheral.isConnected()) {
-                        peripheral.disconnect(null, true);
-                    }
-                    peripheral.errorAndClearAllCallbacks("disconnected by BleManager");
-                    peripheral.resetQueuesAndBuffers();
-                }
+        for (Peripheral peripheral : peripherals.values()) {
+            if (peripheral.isConnected()) {
+                peripheral.disconnect(null, true);
             }
+            peripheral.errorAndClearAllCallbacks("disconnected by BleManager");
+            peripheral.resetQueuesAndBuffers();
         }
     }
 
@@ -865,12 +1189,9 @@ public class BleManager extends NativeBleManagerSpec {
     public void getDiscoveredPeripherals(Callback callback) {
         Log.d(LOG_TAG, "Get discovered peripherals");
         WritableArray map = Arguments.createArray();
-        synchronized (peripherals) {
-            for (Map.Entry<String, Peripheral> entry : peripherals.entrySet()) {
-                Peripheral peripheral = entry.getValue();
-                WritableMap jsonBundle = peripheral.asWritableMap();
-                map.pushMap(jsonBundle);
-            }
+        for (Peripheral peripheral : peripherals.values()) {
+            WritableMap jsonBundle = peripheral.asWritableMap();
+            map.pushMap(jsonBundle);
         }
         callback.invoke(null, map);
     }
@@ -896,6 +1217,96 @@ public class BleManager extends NativeBleManagerSpec {
         callback.invoke(null, map);
     }
 
+    @ReactMethod
+    public void writeStream(String deviceUUID, String serviceUUID, String characteristicUUID, String source,
+                            ReadableMap options, Callback callback) {
+        Log.d(LOG_TAG, "Write stream to: " + deviceUUID);
+        if (serviceUUID == null || characteristicUUID == null) {
+            callback.invoke("ServiceUUID and characteristicUUID required.");
+            return;
+        }
+        // Validate UUID formats to prevent crash
+        UUID service = UUIDHelper.tryParse(serviceUUID);
+        if (service == null) {
+            callback.invoke("Invalid service UUID format: " + serviceUUID);
+            return;
+        }
+        UUID characteristic = UUIDHelper.tryParse(characteristicUUID);
+        if (characteristic == null) {
+            callback.invoke("Invalid characteristic UUID format: " + characteristicUUID);
+            return;
+        }
+        Peripheral peripheral = peripherals.get(deviceUUID);
+        if (peripheral == null) {
+            callback.invoke("Peripheral not found");
+            return;
+        }
+        if (!peripheral.isConnected()) {
+            callback.invoke("Peripheral not connected", null);
+            return;
+        }
+
+        byte[] data;
+        String sourceType = options.hasKey("sourceType") ? options.getString("sourceType") : "base64";
+        try {
+            if ("file".equals(sourceType)) {
+                data = readFile(source);
+            } else if ("base64".equals(sourceType)) {
+                data = Base64.decode(source, Base64.DEFAULT);
+            } else {
+                callback.invoke("Invalid sourceType: " + sourceType);
+                return;
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            callback.invoke("Could not read source: " + e.getMessage());
+            return;
+        }
+        if (data.length == 0) {
+            callback.invoke("Source is empty");
+            return;
+        }
+        Log.d(LOG_TAG, "Stream of " + data.length + " bytes");
+
+        int chunkSize = options.hasKey("chunkSize") ? options.getInt("chunkSize") : 0;
+        int writeType = options.hasKey("withResponse") && options.getBoolean("withResponse")
+                ? BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT : BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE;
+        long progressInterval = options.hasKey("progressInterval") ? options.getInt("progressInterval") : 250;
+        peripheral.writeStream(service, characteristic,
+                data, chunkSize, writeType, progressInterval, callback);
+    }
+
+    private static byte[] readFile(String path) throws IOException {
+        if (path.startsWith("file://")) {
+            path = path.substring("file://".length());
+        }
+        try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+            byte[] data = new byte[(int) file.length()];
+            file.readFully(data);
+            return data;
+        }
+    }
+
+    @ReactMethod
+    public void getPeripheralStatistics(String deviceUUID, Callback callback) {
+        Log.d(LOG_TAG, "Get statistics for: " + deviceUUID);
+        Peripheral peripheral = peripherals.get(deviceUUID);
+        if (peripheral == null) {
+            callback.invoke("Peripheral not found");
+            return;
+        }
+        WritableMap map = peripheral.getCommandQueueStatistics();
+        map.putDouble("droppedNotificationBytes", peripheral.getDroppedNotificationBytes());
+        callback.invoke(null, map);
+    }
+
+    @ReactMethod
+    public void getRegistryStatistics(Callback callback) {
+        WritableMap map = Arguments.createMap();
+        map.putInt("peripheralCount", peripherals.size());
+        map.putDouble("evictions", peripherals.getEvictions());
+        callback.invoke(null, map);
+    }
+
     @Override
     public void isPeripheralConnected(String deviceUUID, Callback callback) {
         Log.d(LOG_TAG, "Checking connection state for: " + deviceUUID);
@@ -930,13 +1341,11 @@ public class BleManager extends NativeBleManagerSpec {
         Log.d(LOG_TAG, "Removing from list: " + deviceUUID);
         Peripheral peripheral = peripherals.get(deviceUUID);
         if (peripheral != null) {
-            synchronized (peripherals) {
-                if (peripheral.isConnected()) {
-                    callback.invoke("Peripheral can not be removed while connected");
-                } else {
-                    peripherals.remove(deviceUUID);
-                    callback.invoke();
-                }
+            if (peripheral.isConnected()) {
+                callback.invoke("Peripheral can not be removed while connected");
+            } else {
+                peripherals.remove(deviceUUID);
+                callback.invoke();
             }
         } else
             callback.invoke("Peripheral not found");
@@ -1019,8 +1428,12 @@ public class BleManager extends NativeBleManagerSpec {
     }
 
     public static WritableArray bytesToWritableArray(byte[] bytes) {
+        return bytesToWritableArray(bytes, 0, bytes.length);
+    }
+
+    public static WritableArray bytesToWritableArray(byte[] bytes, int offset, int length) {
         WritableArray value = Arguments.createArray();
-        for (int i = 0; i < bytes.length; i++)
+        for (int i = offset; i < offset + length; i++)
             value.pushInt((bytes[i] & 0xFF));
         return value;
     }
@@ -1029,19 +1442,18 @@ public class BleManager extends NativeBleManagerSpec {
     private Peripheral retrieveOrCreatePeripheral(String peripheralUUID) {
         Peripheral peripheral = peripherals.get(peripheralUUID);
         if (peripheral == null) {
-            synchronized (peripherals) {
-                if (peripheralUUID != null) {
-                    peripheralUUID = peripheralUUID.toUpperCase();
-                }
-                if (BluetoothAdapter.checkBluetoothAddress(peripheralUUID)) {
-                    BluetoothDevice device = bluetoothAdapter.getRemoteDevice(peripheralUUID);
+            if (peripheralUUID != null) {
+                peripheralUUID = peripheralUUID.toUpperCase();
+            }
+            if (BluetoothAdapter.checkBluetoothAddress(peripheralUUID)) {
+                BluetoothDevice device = bluetoothAdapter.getRemoteDevice(peripheralUUID);
+                peripheral = peripherals.getOrCreate(peripheralUUID, address -> {
                     if (!forceLegacy) {
-                        peripheral = new DefaultPeripheral(device, this);
+                        return new DefaultPeripheral(device, this);
                     } else {
-                        peripheral = new Peripheral(device, this);
+                        return new Peripheral(device, this);
                     }
-                    peripherals.put(peripheralUUID, peripheral);
-                }
+                });
             }
         }
         return peripheral;
@@ -1077,6 +1489,9 @@ public class BleManager extends NativeBleManagerSpec {
             scanManager.stopScan(args -> {
             });
         }
+
+        // after the disconnects posted above have run
+        stopGattThreads();
     }
 
 }
@@ -0,0 +1,90 @@
+package it.innove;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattService;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Resolves a (service, characteristic, required property) lookup to a GATT characteristic in O(1).
+ * Built once per service discovery, with the same preferences as the linear lookups of {@link Peripheral}:
+ * the first characteristic with the UUID and the required property in the first service with the UUID,
+ * else the first characteristic with the UUID.
+ */
+public class CharacteristicIndex {
+    public enum Lookup {
+        ANY,
+        READ,
+        WRITE,
+        WRITE_NO_RESPONSE,
+        // prefers notify over indicate
+        NOTIFY;
+
+        public static Lookup forWriteType(int writeType) {
+            return writeType == BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE ? WRITE_NO_RESPONSE : WRITE;
+        }
+    }
+
+    // slot of the first characteristic with the indicate property, only used to resolve NOTIFY
+    private static final int INDICATE_SLOT = Lookup.values().length;
+
+    private final Map<UUID, Map<UUID, BluetoothGattCharacteristic[]>> services = new HashMap<>();
+
+    public CharacteristicIndex(List<BluetoothGattService> gattServices) {
+        for (BluetoothGattService service : gattServices) {
+            if (services.containsKey(service.getUuid())) {
+                // BluetoothGatt.getService returns the first service with the UUID
+                continue;
+            }
+
+            Map<UUID, BluetoothGattCharacteristic[]> characteristics = new HashMap<>();
+            for (BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
+                BluetoothGattCharacteristic[] slots = characteristics.get(characteristic.getUuid());
+                if (slots == null) {
+                    slots = new BluetoothGattCharacteristic[INDICATE_SLOT + 1];
+                    slots[Lookup.ANY.ordinal()] = characteristic;
+                    characteristics.put(characteristic.getUuid(), slots);
+                }
+                int properties = characteristic.getProperties();
+                fill(slots, Lookup.READ.ordinal(), properties, BluetoothGattCharacteristic.PROPERTY_READ, characteristic);
+                fill(slots, Lookup.WRITE.ordinal(), properties, BluetoothGattCharacteristic.PROPERTY_WRITE, characteristic);
+                fill(slots, Lookup.WRITE_NO_RESPONSE.ordinal(), properties,
+                        BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE, characteristic);
+                fill(slots, Lookup.NOTIFY.ordinal(), properties, BluetoothGattCharacteristic.PROPERTY_NOTIFY, characteristic);
+                fill(slots, INDICATE_SLOT, properties, BluetoothGattCharacteristic.PROPERTY_INDICATE, characteristic);
+            }
+
+            for (BluetoothGattCharacteristic[] slots : characteristics.values()) {
+                if (slots[Lookup.NOTIFY.ordinal()] == null) {
+                    slots[Lookup.NOTIFY.ordinal()] = slots[INDICATE_SLOT];
+                }
+                // as a last resort, any characteristic with the UUID even without the required property
+                for (Lookup lookup : Lookup.values()) {
+                    if (slots[lookup.ordinal()] == null) {
+                        slots[lookup.ordinal()] = slots[Lookup.ANY.ordinal()];
+                    }
+                }
+            }
+            services.put(service.getUuid(), characteristics);
+        }
+    }
+
+    public BluetoothGattCharacteristic get(UUID serviceUUID, UUID characteristicUUID, Lookup lookup) {
+        Map<UUID, BluetoothGattCharacteristic[]> characteristics = services.get(serviceUUID);
+        if (characteristics == null) {
+            return null;
+        }
+        BluetoothGattCharacteristic[] slots = characteristics.get(characteristicUUID);
+        return slots != null ? slots[lookup.ordinal()] : null;
+    }
+
+    private static void fill(BluetoothGattCharacteristic[] slots, int slot, int properties, int property,
+                             BluetoothGattCharacteristic characteristic) {
+        if (slots[slot] == null && (properties & property) != 0) {
+            slots[slot] = characteristic;
+        }
+    }
+}
@@ -31,6 +31,8 @@ import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.WritableMap;
 
+import java.util.UUID;
+
 @RequiresApi(api = Build.VERSION_CODES.O)
 public class CompanionScanner {
 
@@ -113,11 +115,12 @@ public class CompanionScanner {
         for (int i = 0; i < serviceUUIDs.size(); i++) {
             String uuidString = serviceUUIDs.getString(i);
             // Validate UUID format to prevent crash
-            if (!UUIDHelper.isValidBLEUUID(uuidString)) {
+            UUID parsed = UUIDHelper.tryParse(uuidString);
+            if (parsed == null) {
                 Log.w(LOG_TAG, "Warning: Invalid UUID format in scan options: " + uuidString + ", skipping");
                 continue;
             }
-            final ParcelUuid uuid = new ParcelUuid(UUIDHelper.uuidFromString(uuidString));
+            final ParcelUuid uuid = new ParcelUuid(parsed);
             Log.d(LOG_TAG, "Filter service: " + uuid);
             validUUIDCount++;
 
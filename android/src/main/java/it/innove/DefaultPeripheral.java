@@ -15,7 +15,10 @@ import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 
+import org.json.JSONException;
+
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Objects;
 
@@ -24,6 +27,9 @@ public class DefaultPeripheral extends Peripheral {
 
     private ScanRecord advertisingData;
     private ScanResult scanResult;
+    private WritableMap cachedAdvertising;
+    private byte[] cachedAdvertisingBytes;
+    private boolean cachedConnectable;
 
     public DefaultPeripheral(BleManager bleManager, ScanResult result) {
         super(result.getDevice(), result.getRssi(), Objects.requireNonNull(result.getScanRecord()).getBytes(), bleManager);
@@ -37,8 +43,7 @@ public class DefaultPeripheral extends Peripheral {
 
     @Override
     public WritableMap asWritableMap() {
-        WritableMap map = super.asWritableMap();
-        WritableMap advertising = Arguments.createMap();
+        WritableMap map = Arguments.createMap();
 
         try {
             String name = getSafeDeviceName();
@@ -48,72 +53,111 @@ public class DefaultPeripheral extends Peripheral {
             map.putString("name", name);
             map.putString("id", device.getAddress()); // mac address
             map.putInt("rssi", advertisingRSSI);
+            map.putMap("advertising", getAdvertisingMap());
+        } catch (Exception e) { // this shouldn't happen
+            Log.e(LOG_TAG, "asWritableMap error", e);
+        }
 
-            advertising.putMap("rawData", byteArrayToWritableMap(advertisingDataBytes));
+        return map;
+    }
 
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                // We can check if peripheral is connectable using the scanresult
-                if (this.scanResult != null) {
-                    advertising.putBoolean("isConnectable", scanResult.isConnectable());
-                }
-            } else {
-                // We can't check if peripheral is connectable
-                advertising.putBoolean("isConnectable", true);
+    /**
+     * The advertising payload is only parsed again when the raw scan record changes,
+     * otherwise a copy of the last serialized map is returned.
+     * The map is built outside of the lock so scan updates are never held up by it.
+     */
+    private WritableMap getAdvertisingMap() throws JSONException {
+        ScanResult scanResult;
+        ScanRecord advertisingData;
+        byte[] advertisingDataBytes;
+        WritableMap advertising;
+        boolean connectable;
+        synchronized (this) {
+            scanResult = this.scanResult;
+            advertisingData = this.advertisingData;
+            advertisingDataBytes = this.advertisingDataBytes;
+            connectable = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                    && scanResult != null && scanResult.isConnectable();
+            boolean cached = cachedAdvertising != null && cachedConnectable == connectable
+                    && Arrays.equals(cachedAdvertisingBytes, advertisingDataBytes);
+            advertising = cached ? cachedAdvertising : null;
+        }
+
+        if (advertising == null) {
+            advertising = buildAdvertisingMap(scanResult, advertisingData, advertisingDataBytes);
+            synchronized (this) {
+                cachedAdvertising = advertising;
+                cachedAdvertisingBytes = advertisingDataBytes;
+                cachedConnectable = connectable;
+            }
+        }
+        // a map is consumed when it is sent over the bridge, so the cached one is never handed out
+        return advertising.copy();
+    }
+
+    private static WritableMap buildAdvertisingMap(ScanResult scanResult, ScanRecord advertisingData,
+                                                   byte[] advertisingDataBytes) throws JSONException {
+        WritableMap advertising = Arguments.createMap();
+        advertising.putMap("rawData", byteArrayToWritableMap(advertisingDataBytes));
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            // We can check if peripheral is connectable using the scanresult
+            if (scanResult != null) {
+                advertising.putBoolean("isConnectable", scanResult.isConnectable());
             }
+        } else {
+            // We can't check if peripheral is connectable
+            advertising.putBoolean("isConnectable", true);
+        }
 
-            if (advertisingData != null) {
-                String deviceName = advertisingData.getDeviceName();
-                if (deviceName != null)
-                    advertising.putString("localName", deviceName.replace("\0", ""));
+        if (advertisingData != null) {
+            String deviceName = advertisingData.getDeviceName();
+            if (deviceName != null)
+                advertising.putString("localName", deviceName.replace("\0", ""));
 
-                WritableArray serviceUuids = Arguments.createArray();
-                if (advertisingData.getServiceUuids() != null && !advertisingData.getServiceUuids().isEmpty()) {
-                    for (ParcelUuid uuid : advertisingData.getServiceUuids()) {
-                        serviceUuids.pushString(UUIDHelper.uuidToString(uuid.getUuid()));
-                    }
+            WritableArray serviceUuids = Arguments.createArray();
+            if (advertisingData.getServiceUuids() != null && !advertisingData.getServiceUuids().isEmpty()) {
+                for (ParcelUuid uuid : advertisingData.getServiceUuids()) {
+                    serviceUuids.pushString(UUIDHelper.uuidToString(uuid.getUuid()));
                 }
-                advertising.putArray("serviceUUIDs", serviceUuids);
-
-                WritableMap serviceData = Arguments.createMap();
-                if (advertisingData.getServiceData() != null) {
-                    for (Map.Entry<ParcelUuid, byte[]> entry : advertisingData.getServiceData().entrySet()) {
-                        if (entry.getValue() != null) {
-                            serviceData.putMap(UUIDHelper.uuidToString((entry.getKey()).getUuid()), byteArrayToWritableMap(entry.getValue()));
-                        }
+            }
+            advertising.putArray("serviceUUIDs", serviceUuids);
+
+            WritableMap serviceData = Arguments.createMap();
+            if (advertisingData.getServiceData() != null) {
+                for (Map.Entry<ParcelUuid, byte[]> entry : advertisingData.getServiceData().entrySet()) {
+                    if (entry.getValue() != null) {
+                        serviceData.putMap(UUIDHelper.uuidToString((entry.getKey()).getUuid()), byteArrayToWritableMap(entry.getValue()));
                     }
                 }
-                advertising.putMap("serviceData", serviceData);
-
-                WritableMap manufacturerData = Arguments.createMap();
-                SparseArray<byte[]> manufacturerRawData = advertisingData.getManufacturerSpecificData();
-                byte[] manufacturerRawBytes = new byte[0];
-                if (manufacturerRawData != null && manufacturerRawData.size() > 0) {
-                    int key = manufacturerRawData.keyAt(0);
-                    byte[] data = manufacturerRawData.valueAt(0);
-                    manufacturerData.putMap(String.format("%04x", key), byteArrayToWritableMap(data));
-
-                    ByteBuffer keyBuffer = ByteBuffer.allocate(Integer.SIZE / Byte.SIZE);
-                    keyBuffer.putInt(key);
-                    byte[] keyBytes = keyBuffer.array();
-                    manufacturerRawBytes = new byte[keyBytes.length + data.length];
-                    System.arraycopy(keyBytes, 0, manufacturerRawBytes, 0, keyBytes.length);
-                    System.arraycopy(data, 0, manufacturerRawBytes, keyBytes.length, data.length);
-                }
-                advertising.putMap("manufacturerData", manufacturerData);
-                advertising.putMap("manufacturerRawData", byteArrayToWritableMap(manufacturerRawBytes));
-
-                advertising.putInt("txPowerLevel", advertisingData.getTxPowerLevel());
             }
+            advertising.putMap("serviceData", serviceData);
+
+            WritableMap manufacturerData = Arguments.createMap();
+            SparseArray<byte[]> manufacturerRawData = advertisingData.getManufacturerSpecificData();
+            byte[] manufacturerRawBytes = new byte[0];
+            if (manufacturerRawData != null && manufacturerRawData.size() > 0) {
+                int key = manufacturerRawData.keyAt(0);
+                byte[] data = manufacturerRawData.valueAt(0);
+                manufacturerData.putMap(String.format("%04x", key), byteArrayToWritableMap(data));
+
+                ByteBuffer keyBuffer = ByteBuffer.allocate(Integer.SIZE / Byte.SIZE);
+                keyBuffer.putInt(key);
+                byte[] keyBytes = keyBuffer.array();
+                manufacturerRawBytes = new byte[keyBytes.length + data.length];
+                System.arraycopy(keyBytes, 0, manufacturerRawBytes, 0, keyBytes.length);
+                System.arraycopy(data, 0, manufacturerRawBytes, keyBytes.length, data.length);
+            }
+            advertising.putMap("manufacturerData", manufacturerData);
+            advertising.putMap("manufacturerRawData", byteArrayToWritableMap(manufacturerRawBytes));
 
-            map.putMap("advertising", advertising);
-        } catch (Exception e) { // this shouldn't happen
-            Log.e(LOG_TAG, "asWritableMap error", e);
+            advertising.putInt("txPowerLevel", advertisingData.getTxPowerLevel());
         }
 
-        return map;
+        return advertising;
     }
 
-    public void updateData(ScanResult result) {
+    public synchronized void updateData(ScanResult result) {
         scanResult = result;
         advertisingData = result.getScanRecord();
         advertisingDataBytes = advertisingData != null ? advertisingData.getBytes() : null;
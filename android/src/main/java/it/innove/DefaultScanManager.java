@@ -20,7 +20,10 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.ParcelUuid;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.core.app.ActivityCompat;
@@ -31,12 +34,20 @@ import com.facebook.react.bridge.Callback;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableType;
+import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
 
 @SuppressLint("MissingPermission")
 public class DefaultScanManager extends ScanManager {
@@ -51,6 +62,44 @@ public class DefaultScanManager extends ScanManager {
     private static final String EXTRA_SCAN_RESULT = "android.bluetooth.le.extra.SCAN_RESULT";
     private static final String EXTRA_ERROR_CODE = "android.bluetooth.le.extra.ERROR_CODE";
 
+    private static class DiscoveredPeripheral {
+        final DefaultPeripheral peripheral;
+        // advertisements merged into this entry
+        int count;
+
+        DiscoveredPeripheral(DefaultPeripheral peripheral, int count) {
+            this.peripheral = peripheral;
+            this.count = count;
+        }
+    }
+
+    // read on the binder thread of the scan callback
+    private volatile ScanResultFilter resultFilter;
+    private volatile ScanResultThrottle scanThrottle = new ScanResultThrottle(0, false, 0);
+    // time (ms) discovered peripherals are collected before being emitted together, 0 to emit them one by one
+    private long batchWindow = 0;
+    private final Map<String, DiscoveredPeripheral> pendingBatch = new LinkedHashMap<>();
+    // report each batch delivered by the controller as a single onDiscoverPeripherals event
+    private volatile boolean compactBatches = false;
+    private final Runnable batchFlush = this::flushDiscoveredBatch;
+
+    // scan timeout, duty cycle and deferred start steps, all run on the main thread
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private Runnable scanTimeout;
+    private final Runnable dutyCyclePause = this::pauseDutyCycle;
+    private final Runnable scanResume = this::resumeHardwareScan;
+    // time (ms) the scanner runs in every duty cycle interval, 0 to scan continuously
+    private long dutyCycleWindow = 0;
+    private long dutyCycleInterval = 0;
+    // the scan session is active but the hardware scan is paused or its start is deferred
+    private boolean hardwareScanPaused = false;
+    private volatile boolean adaptiveScanMode = false;
+    // shared by all scan sessions, the start quota applies to the whole app
+    private final ScanScheduler scanScheduler = new ScanScheduler();
+    private List<ScanFilter> scanFilters;
+    private ScanSettings.Builder scanSettingsBuilder;
+    private ScanSettings scanSettings;
+
     public DefaultScanManager(ReactApplicationContext reactContext, BleManager bleManager) {
         super(reactContext, bleManager);
     }
@@ -108,11 +157,12 @@ public class DefaultScanManager extends ScanManager {
             for (int i = 0; i < serviceUUIDs.size(); i++) {
                 String uuidString = Objects.requireNonNull(serviceUUIDs.getString(i));
                 // Validate UUID format to prevent crash
-                if (!UUIDHelper.isValidBLEUUID(uuidString)) {
+                UUID uuid = UUIDHelper.tryParse(uuidString);
+                if (uuid == null) {
                     Log.w(BleManager.LOG_TAG, "Warning: Invalid UUID format in scan options: " + uuidString + ", skipping");
                     continue;
                 }
-                ScanFilter filter = new ScanFilter.Builder().setServiceUuid(new ParcelUuid(UUIDHelper.uuidFromString(uuidString))).build();
+                ScanFilter filter = new ScanFilter.Builder().setServiceUuid(new ParcelUuid(uuid)).build();
                 filters.add(filter);
                 validUUIDCount++;
                 Log.d(BleManager.LOG_TAG, "Filter service: " + uuidString);
@@ -140,47 +190,27 @@ public class DefaultScanManager extends ScanManager {
             }
         }
 
-        if (options.hasKey("manufacturerData")) {
-            ReadableMap manufacturerDataMap = options.getMap("manufacturerData");
-            if (manufacturerDataMap != null && manufacturerDataMap.hasKey("manufacturerId")) {
-                int manufacturerId = manufacturerDataMap.getInt("manufacturerId");
-                ReadableArray manufacturerData = manufacturerDataMap.getArray("manufacturerData");
-                ReadableArray manufacturerDataMask = manufacturerDataMap.getArray("manufacturerDataMask");
-                byte[] manufacturerDataBytes = new byte[0];
-                byte[] manufacturerDataMaskBytes = new byte[0];
-                if (manufacturerData != null) {
-                    manufacturerDataBytes = new byte[manufacturerData.size()];
-                    for (int i = 0; i < manufacturerData.size(); i++) {
-                        manufacturerDataBytes[i] = Integer.valueOf(manufacturerData.getInt(i)).byteValue();
-                    }
-                }
-                if (manufacturerDataMask != null) {
-                    manufacturerDataMaskBytes = new byte[manufacturerDataMask.size()];
-                    for (int i = 0; i < manufacturerDataMask.size(); i++) {
-                        manufacturerDataMaskBytes[i] = Integer.valueOf(manufacturerDataMask.getInt(i)).byteValue();
-                    }
-                }
-                if (manufacturerDataBytes.length != manufacturerDataMaskBytes.length) {
-                    callback.invoke("manufacturerData and manufacturerDataMask must have the same length");
-                    return;
+        try {
+            for (ReadableMap manufacturerDataMap : getMapOrMaps(options, "manufacturerData")) {
+                ScanFilter filter = buildManufacturerDataFilter(manufacturerDataMap);
+                if (filter != null) {
+                    filters.add(filter);
                 }
-                Log.d(
-                        BleManager.LOG_TAG,
-                        String.format(
-                                "Filter on manufacturerId: %d; manufacturerData: %s; manufacturerDataMask: %s",
-                                manufacturerId,
-                                Arrays.toString(manufacturerDataBytes),
-                                Arrays.toString(manufacturerDataMaskBytes)
-                        )
-                );
-                ScanFilter filter = new ScanFilter.Builder()
-                        .setManufacturerData(
-                                manufacturerId,
-                                manufacturerDataBytes,
-                                manufacturerDataMaskBytes
-                        ).build();
-                filters.add(filter);
             }
+            for (ReadableMap serviceDataMap : getMapOrMaps(options, "serviceData")) {
+                filters.add(buildServiceDataFilter(serviceDataMap));
+            }
+        } catch (IllegalArgumentException e) {
+            callback.invoke(e.getMessage());
+            return;
+        }
+
+        ScanResultFilter newResultFilter;
+        try {
+            newResultFilter = ScanResultFilter.fromReadableMap(options.hasKey("filter") ? options.getMap("filter") : null);
+        } catch (IllegalArgumentException e) {
+            callback.invoke("Invalid scan filter: " + e.getMessage());
+            return;
         }
 
         boolean useScanIntent = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
@@ -192,6 +222,18 @@ public class DefaultScanManager extends ScanManager {
             return;
         }
 
+        long newDutyCycleWindow = 0;
+        long newDutyCycleInterval = 0;
+        if (options.hasKey("dutyCycle")) {
+            ReadableMap dutyCycle = Objects.requireNonNull(options.getMap("dutyCycle"));
+            newDutyCycleWindow = dutyCycle.hasKey("window") ? (long) dutyCycle.getDouble("window") : 0;
+            newDutyCycleInterval = dutyCycle.hasKey("interval") ? (long) dutyCycle.getDouble("interval") : 0;
+            if (newDutyCycleWindow <= 0 || newDutyCycleInterval <= newDutyCycleWindow) {
+                callback.invoke("dutyCycle window must be positive and shorter than its interval");
+                return;
+            }
+        }
+
         if (isScanning) {
             scanSessionId.incrementAndGet();
             stopActiveScan();
@@ -203,6 +245,19 @@ public class DefaultScanManager extends ScanManager {
             return;
         }
 
+        resultFilter = newResultFilter;
+        scanThrottle = ScanResultThrottle.fromReadableMap(options);
+        batchWindow = options.hasKey("batchWindow") ? (long) options.getDouble("batchWindow") : 0;
+        compactBatches = options.hasKey("compactBatches") && options.getBoolean("compactBatches");
+        dutyCycleWindow = newDutyCycleWindow;
+        dutyCycleInterval = newDutyCycleInterval;
+        adaptiveScanMode = dutyCycleWindow > 0 && options.hasKey("adaptiveScanMode") && options.getBoolean("adaptiveScanMode");
+        scanScheduler.resetDiscoveries(dutyCycleInterval);
+        scanFilters = filters;
+        this.scanSettingsBuilder = scanSettingsBuilder;
+        scanSettings = scanSettingsBuilder.build();
+        long startDelay = scanScheduler.getStartDelay(SystemClock.elapsedRealtime());
+
         try {
             if (useScanIntent) {
                 Log.i(BleManager.LOG_TAG, "Scan with intent");
@@ -214,11 +269,10 @@ public class DefaultScanManager extends ScanManager {
                     flags |= PendingIntent.FLAG_MUTABLE;
                 }
                 scanPendingIntent = PendingIntent.getBroadcast(context, 0, intent, flags);
-                scanner.startScan(filters, scanSettingsBuilder.build(), scanPendingIntent);
-                scanningWithIntent = true;
-            } else {
-                scanner.startScan(filters, scanSettingsBuilder.build(), mScanCallback);
-                scanningWithIntent = false;
+            }
+            scanningWithIntent = useScanIntent;
+            if (startDelay == 0) {
+                startHardwareScan(scanner);
             }
         } catch (Exception e) {
             if (useScanIntent) {
@@ -228,55 +282,304 @@ public class DefaultScanManager extends ScanManager {
                 }
                 unregisterScanReceiver();
             }
+            scanningWithIntent = false;
             callback.invoke("Failed to start scan: " + e.getMessage());
             return;
         }
 
         isScanning = true;
 
+        if (startDelay > 0) {
+            hardwareScanPaused = true;
+            deferHardwareScan(startDelay);
+        } else if (dutyCycleWindow > 0) {
+            handler.postDelayed(dutyCyclePause, dutyCycleWindow);
+        }
+
         long scanSeconds = (long) options.getDouble("seconds");
         if (scanSeconds > 0) {
-            Thread thread = new Thread() {
-                private final int currentScanSession = scanSessionId.incrementAndGet();
+            final int currentScanSession = scanSessionId.incrementAndGet();
+            scanTimeout = () -> {
+                // check current scan session was not stopped
+                if (scanSessionId.intValue() != currentScanSession) {
+                    return;
+                }
+                if (getBluetoothAdapter().getState() == BluetoothAdapter.STATE_ON) {
+                    stopActiveScan();
+                } else {
+                    cancelScheduledTasks();
+                }
 
-                @Override
-                public void run() {
+                WritableMap map = Arguments.createMap();
+                map.putInt("status", 10);
+                bleManager.emitOnStopScan(map);
+            };
+            handler.postDelayed(scanTimeout, scanSeconds * 1000L);
+        }
+        callback.invoke();
+    }
 
-                    try {
-                        Thread.sleep(scanSeconds * 1000L);
-                    } catch (InterruptedException ignored) {
-                    }
+    private void startHardwareScan(BluetoothLeScanner scanner) {
+        scanScheduler.recordStart(SystemClock.elapsedRealtime());
+        if (scanningWithIntent) {
+            scanner.startScan(scanFilters, scanSettings, scanPendingIntent);
+        } else {
+            scanner.startScan(scanFilters, scanSettings, mScanCallback);
+        }
+    }
 
-                    runOnUiThread(new Runnable() {
-                        @Override
-                        public void run() {
-                            BluetoothAdapter btAdapter = getBluetoothAdapter();
+    private void stopHardwareScan(BluetoothLeScanner scanner) {
+        try {
+            if (scanningWithIntent && scanPendingIntent != null) {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                    scanner.stopScan(scanPendingIntent);
+                }
+            } else {
+                scanner.stopScan(mScanCallback);
+            }
+        } catch (IllegalArgumentException | IllegalStateException ignored) {
+            Log.w(BleManager.LOG_TAG, "stopScan ignored error: " + ignored.getMessage());
+        }
+    }
 
-                            // check current scan session was not stopped
-                            if (scanSessionId.intValue() == currentScanSession) {
-                                if (btAdapter.getState() == BluetoothAdapter.STATE_ON) {
-                                    stopActiveScan();
-                                }
+    private void pauseDutyCycle() {
+        if (!isScanning || hardwareScanPaused) {
+            return;
+        }
+        BluetoothLeScanner scanner = getBluetoothAdapter().getBluetoothLeScanner();
+        if (scanner != null) {
+            stopHardwareScan(scanner);
+        }
+        hardwareScanPaused = true;
+        flushDiscoveredBatch();
+        handler.postDelayed(scanResume, dutyCycleInterval - dutyCycleWindow);
+    }
 
-                                WritableMap map = Arguments.createMap();
-                                map.putInt("status", 10);
-                                bleManager.emitOnStopScan(map);
-                            }
-                        }
-                    });
+    private void resumeHardwareScan() {
+        if (!isScanning || !hardwareScanPaused) {
+            return;
+        }
+        long startDelay = scanScheduler.getStartDelay(SystemClock.elapsedRealtime());
+        if (startDelay > 0) {
+            deferHardwareScan(startDelay);
+            return;
+        }
+        if (adaptiveScanMode) {
+            scanSettings = scanSettingsBuilder.setScanMode(scanScheduler.nextScanMode(SystemClock.elapsedRealtime())).build();
+        }
+        BluetoothLeScanner scanner = getBluetoothAdapter().getBluetoothLeScanner();
+        try {
+            if (scanner == null) {
+                throw new IllegalStateException("No BLE scanner available");
+            }
+            startHardwareScan(scanner);
+        } catch (Exception e) {
+            Log.w(BleManager.LOG_TAG, "Failed to resume scan: " + e.getMessage());
+            scanSessionId.incrementAndGet();
+            stopActiveScan();
+            WritableMap map = Arguments.createMap();
+            map.putInt("status", ScanCallback.SCAN_FAILED_INTERNAL_ERROR);
+            bleManager.emitOnStopScan(map);
+            return;
+        }
+        hardwareScanPaused = false;
+        if (dutyCycleWindow > 0) {
+            handler.postDelayed(dutyCyclePause, dutyCycleWindow);
+        }
+    }
+
+    private void deferHardwareScan(long delay) {
+        Log.w(BleManager.LOG_TAG, "Scan start quota reached, starting in " + delay + "ms");
+        handler.postDelayed(scanResume, delay);
+        WritableMap map = Arguments.createMap();
+        map.putDouble("delay", delay);
+        bleManager.emitOnScanBackoff(map);
+    }
 
+    private void cancelScheduledTasks() {
+        handler.removeCallbacks(dutyCyclePause);
+        handler.removeCallbacks(scanResume);
+        if (scanTimeout != null) {
+            handler.removeCallbacks(scanTimeout);
+            scanTimeout = null;
+        }
+        hardwareScanPaused = false;
+    }
+
+    /**
+     * Reads an option given either as a single map or as an array of maps.
+     */
+    private static List<ReadableMap> getMapOrMaps(ReadableMap options, String key) {
+        List<ReadableMap> maps = new ArrayList<>();
+        if (!options.hasKey(key)) {
+            return maps;
+        }
+        if (options.getType(key) == ReadableType.Array) {
+            ReadableArray array = Objects.requireNonNull(options.getArray(key));
+            for (int i = 0; i < array.size(); i++) {
+                ReadableMap map = array.getMap(i);
+                if (map != null) {
+                    maps.add(map);
                 }
+            }
+        } else if (options.getType(key) == ReadableType.Map) {
+            maps.add(Objects.requireNonNull(options.getMap(key)));
+        }
+        return maps;
+    }
 
-            };
-            thread.start();
+    private static byte[] toByteArray(ReadableArray array) {
+        if (array == null) {
+            return new byte[0];
         }
-        callback.invoke();
+        byte[] bytes = new byte[array.size()];
+        for (int i = 0; i < array.size(); i++) {
+            bytes[i] = Integer.valueOf(array.getInt(i)).byteValue();
+        }
+        return bytes;
+    }
+
+    private static ScanFilter buildManufacturerDataFilter(ReadableMap manufacturerDataMap) {
+        if (!manufacturerDataMap.hasKey("manufacturerId")) {
+            return null;
+        }
+        int manufacturerId = manufacturerDataMap.getInt("manufacturerId");
+        byte[] manufacturerDataBytes = toByteArray(manufacturerDataMap.getArray("manufacturerData"));
+        byte[] manufacturerDataMaskBytes = toByteArray(manufacturerDataMap.getArray("manufacturerDataMask"));
+        if (manufacturerDataBytes.length != manufacturerDataMaskBytes.length) {
+            throw new IllegalArgumentException("manufacturerData and manufacturerDataMask must have the same length");
+        }
+        Log.d(
+                BleManager.LOG_TAG,
+                String.format(
+                        "Filter on manufacturerId: %d; manufacturerData: %s; manufacturerDataMask: %s",
+                        manufacturerId,
+                        Arrays.toString(manufacturerDataBytes),
+                        Arrays.toString(manufacturerDataMaskBytes)
+                )
+        );
+        return new ScanFilter.Builder()
+                .setManufacturerData(
+                        manufacturerId,
+                        manufacturerDataBytes,
+                        manufacturerDataMaskBytes
+                ).build();
+    }
+
+    private static ScanFilter buildServiceDataFilter(ReadableMap serviceDataMap) {
+        String uuidString = serviceDataMap.getString("serviceUUID");
+        UUID uuid = UUIDHelper.tryParse(uuidString);
+        if (uuid == null) {
+            throw new IllegalArgumentException("Invalid UUID format in serviceData: " + uuidString);
+        }
+        ParcelUuid serviceUuid = new ParcelUuid(uuid);
+        byte[] serviceDataBytes = toByteArray(serviceDataMap.getArray("serviceData"));
+        ScanFilter.Builder builder = new ScanFilter.Builder();
+        if (serviceDataMap.hasKey("serviceDataMask")) {
+            byte[] serviceDataMaskBytes = toByteArray(serviceDataMap.getArray("serviceDataMask"));
+            if (serviceDataBytes.length != serviceDataMaskBytes.length) {
+                throw new IllegalArgumentException("serviceData and serviceDataMask must have the same length");
+            }
+            builder.setServiceData(serviceUuid, serviceDataBytes, serviceDataMaskBytes);
+        } else {
+            builder.setServiceData(serviceUuid, serviceDataBytes);
+        }
+        Log.d(BleManager.LOG_TAG, "Filter on service data: " + uuidString + " " + Arrays.toString(serviceDataBytes));
+        return builder.build();
+    }
+
+    /**
+     * Applies the result filter and, with adaptiveScanMode, counts the discovery for the scan scheduler.
+     *
+     * @return false if the result is filtered out
+     */
+    private boolean matchesFilter(ScanResult result) {
+        ScanResultFilter filter = resultFilter;
+        if (filter != null && !filter.matches(result)) {
+            return false;
+        }
+        if (adaptiveScanMode) {
+            scanScheduler.onDeviceDiscovered(result.getDevice().getAddress(), SystemClock.elapsedRealtime());
+        }
+        return true;
+    }
+
+    /**
+     * Applies the result filter and the throttle where the result is delivered, so dropped results are not
+     * posted to the main thread. Every matching result updates the peripheral registry, so a throttled
+     * peripheral stays fresh, the throttle only decides whether the result is emitted.
+     */
+    private boolean acceptResult(ScanResult result) {
+        if (!matchesFilter(result)) {
+            return false;
+        }
+        savePeripheral(result);
+        return shouldEmit(result);
+    }
+
+    private List<ScanResult> acceptResults(List<ScanResult> results) {
+        List<ScanResult> accepted = new ArrayList<>(results.size());
+        if (!compactBatches) {
+            for (ScanResult result : results) {
+                if (acceptResult(result)) {
+                    accepted.add(result);
+                }
+            }
+            return accepted;
+        }
+
+        Map<String, ScanResult> latestResults = new LinkedHashMap<>();
+        for (ScanResult result : results) {
+            if (matchesFilter(result)) {
+                savePeripheral(result);
+                accepted.add(result);
+                latestResults.put(result.getDevice().getAddress(), result);
+            }
+        }
+        // the throttle only sees the latest result of each peripheral in the batch
+        Set<String> throttled = new HashSet<>();
+        for (Map.Entry<String, ScanResult> latest : latestResults.entrySet()) {
+            if (!shouldEmit(latest.getValue())) {
+                throttled.add(latest.getKey());
+            }
+        }
+        if (!throttled.isEmpty()) {
+            accepted.removeIf(result -> throttled.contains(result.getDevice().getAddress()));
+        }
+        return accepted;
+    }
+
+    private DefaultPeripheral savePeripheral(ScanResult result) {
+        DefaultPeripheral peripheral = (DefaultPeripheral) bleManager.getPeripheral(result.getDevice());
+        if (peripheral == null) {
+            peripheral = new DefaultPeripheral(bleManager, result);
+        } else {
+            peripheral.updateData(result);
+            peripheral.updateRssi(result.getRssi());
+        }
+        bleManager.savePeripheral(peripheral);
+        return peripheral;
+    }
+
+    /**
+     * @return the peripheral of the result, saved again only if it was evicted since the result was delivered
+     */
+    private DefaultPeripheral registeredPeripheral(ScanResult result) {
+        DefaultPeripheral peripheral = (DefaultPeripheral) bleManager.getPeripheral(result.getDevice());
+        return peripheral != null ? peripheral : savePeripheral(result);
+    }
+
+    private boolean shouldEmit(ScanResult result) {
+        ScanRecord record = result.getScanRecord();
+        return scanThrottle.shouldEmit(result.getDevice().getAddress(), result.getRssi(),
+                record != null ? record.getBytes() : null, SystemClock.elapsedRealtime());
     }
 
     private void onDiscoveredPeripheral(final ScanResult result) {
+        DefaultPeripheral peripheral = registeredPeripheral(result);
+
         String info;
         ScanRecord record = result.getScanRecord();
-
         if (record != null) {
             info = record.getDeviceName();
         } else if (ActivityCompat.checkSelfPermission(context, Manifest.permission.BLUETOOTH_CONNECT) == PackageManager.PERMISSION_GRANTED) {
@@ -287,22 +590,97 @@ public class DefaultScanManager extends ScanManager {
 
         Log.i(BleManager.LOG_TAG, "DiscoverPeripheral: " + info);
 
-        DefaultPeripheral peripheral = (DefaultPeripheral) bleManager.getPeripheral(result.getDevice());
-        if (peripheral == null) {
-            peripheral = new DefaultPeripheral(bleManager, result);
-        } else {
-            peripheral.updateData(result);
-            peripheral.updateRssi(result.getRssi());
+        if (batchWindow > 0) {
+            queueDiscoveredPeripheral(peripheral, 1);
+            return;
         }
-        bleManager.savePeripheral(peripheral);
 
         WritableMap map = peripheral.asWritableMap();
         bleManager.emitOnDiscoverPeripheral(map);
     }
 
+    /**
+     * Handles a batch of results delivered by the controller (reportDelay).
+     * With compactBatches the batch is reported as a single event, one entry per peripheral.
+     */
+    private void onDiscoveredPeripherals(final List<ScanResult> results) {
+        if (!compactBatches) {
+            for (ScanResult result : results) {
+                onDiscoveredPeripheral(result);
+            }
+            return;
+        }
+
+        Map<String, DiscoveredPeripheral> discovered = new LinkedHashMap<>();
+        for (ScanResult result : results) {
+            DefaultPeripheral peripheral = registeredPeripheral(result);
+            String address = peripheral.getDevice().getAddress();
+            DiscoveredPeripheral entry = discovered.get(address);
+            if (entry == null) {
+                discovered.put(address, new DiscoveredPeripheral(peripheral, 1));
+            } else {
+                entry.count++;
+            }
+        }
+        Log.i(BleManager.LOG_TAG, "DiscoverPeripherals: " + discovered.size() + " of " + results.size() + " results");
+
+        if (batchWindow > 0) {
+            for (DiscoveredPeripheral entry : discovered.values()) {
+                queueDiscoveredPeripheral(entry.peripheral, entry.count);
+            }
+            return;
+        }
+        emitDiscoveredPeripherals(discovered.values());
+    }
+
+    private void queueDiscoveredPeripheral(DefaultPeripheral peripheral, int count) {
+        synchronized (pendingBatch) {
+            boolean flushScheduled = !pendingBatch.isEmpty();
+            // a peripheral seen again within the window is emitted once, with its latest data
+            String address = peripheral.getDevice().getAddress();
+            DiscoveredPeripheral entry = pendingBatch.get(address);
+            if (entry == null) {
+                pendingBatch.put(address, new DiscoveredPeripheral(peripheral, count));
+            } else {
+                entry.count += count;
+            }
+            if (!flushScheduled) {
+                handler.postDelayed(batchFlush, batchWindow);
+            }
+        }
+    }
+
+    private void flushDiscoveredBatch() {
+        handler.removeCallbacks(batchFlush);
+        List<DiscoveredPeripheral> peripherals;
+        synchronized (pendingBatch) {
+            if (pendingBatch.isEmpty()) {
+                return;
+            }
+            peripherals = new ArrayList<>(pendingBatch.values());
+            pendingBatch.clear();
+        }
+        emitDiscoveredPeripherals(peripherals);
+    }
+
+    private void emitDiscoveredPeripherals(Collection<DiscoveredPeripheral> peripherals) {
+        WritableArray array = Arguments.createArray();
+        for (DiscoveredPeripheral entry : peripherals) {
+            WritableMap peripheralMap = entry.peripheral.asWritableMap();
+            peripheralMap.putInt("count", entry.count);
+            array.pushMap(peripheralMap);
+        }
+        WritableMap map = Arguments.createMap();
+        map.putArray("peripherals", array);
+        bleManager.emitOnDiscoverPeripherals(map);
+    }
+
     private final ScanCallback mScanCallback = new ScanCallback() {
         @Override
         public void onScanResult(final int callbackType, final ScanResult result) {
+            if (!acceptResult(result)) {
+                return;
+            }
             runOnUiThread(new Runnable() {
                 @Override
                 public void run() {
@@ -313,16 +691,14 @@ public class DefaultScanManager extends ScanManager {
 
         @Override
         public void onBatchScanResults(final List<ScanResult> results) {
+            final List<ScanResult> accepted = acceptResults(results);
+            if (accepted.isEmpty()) {
+                return;
+            }
             runOnUiThread(new Runnable() {
                 @Override
                 public void run() {
-                    if (results.isEmpty()) {
-                        return;
-                    }
-
-                    for (ScanResult result : results) {
-                        onDiscoveredPeripheral(result);
-                    }
+                    onDiscoveredPeripherals(accepted);
                 }
             });
         }
@@ -344,22 +720,19 @@ public class DefaultScanManager extends ScanManager {
     @Override
     public void setScanning(boolean scanning) {
         isScanning = scanning;
+        if (!scanning) {
+            // the timeout stays scheduled so onStopScan is still emitted when it expires
+            handler.removeCallbacks(dutyCyclePause);
+            handler.removeCallbacks(scanResume);
+            hardwareScanPaused = false;
+        }
     }
 
     private void stopActiveScan() {
+        cancelScheduledTasks();
         BluetoothLeScanner scanner = getBluetoothAdapter() != null ? getBluetoothAdapter().getBluetoothLeScanner() : null;
         if (scanner != null) {
-            try {
-                if (scanningWithIntent && scanPendingIntent != null) {
-                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                        scanner.stopScan(scanPendingIntent);
-                    }
-                } else {
-                    scanner.stopScan(mScanCallback);
-                }
-            } catch (IllegalArgumentException | IllegalStateException ignored) {
-                Log.w(BleManager.LOG_TAG, "stopScan ignored error: " + ignored.getMessage());
-            }
+            stopHardwareScan(scanner);
         }
         if (scanPendingIntent != null) {
             scanPendingIntent.cancel();
@@ -368,6 +741,8 @@ public class DefaultScanManager extends ScanManager {
         unregisterScanReceiver();
         scanningWithIntent = false;
         isScanning = false;
+        // deliver what was collected so far before the scan is reported as stopped
+        flushDiscoveredBatch();
     }
 
     private void ensureScanReceiver() {
@@ -393,17 +768,21 @@ public class DefaultScanManager extends ScanManager {
                         return;
                     }
 
-                    final ArrayList<ScanResult> results = intent.getParcelableArrayListExtra(EXTRA_LIST_SCAN_RESULT);
-                    final ScanResult singleResult = intent.getParcelableExtra(EXTRA_SCAN_RESULT);
+                    ArrayList<ScanResult> intentResults = intent.getParcelableArrayListExtra(EXTRA_LIST_SCAN_RESULT);
+                    ScanResult intentResult = intent.getParcelableExtra(EXTRA_SCAN_RESULT);
+                    final List<ScanResult> results = intentResults != null ? acceptResults(intentResults) : null;
+                    final ScanResult singleResult = intentResults == null && intentResult != null
+                            && acceptResult(intentResult) ? intentResult : null;
+                    if ((results == null || results.isEmpty()) && singleResult == null) {
+                        return;
+                    }
 
                     runOnUiThread(new Runnable() {
                         @Override
                         public void run() {
                             if (results != null) {
-                                for (ScanResult result : results) {
-                                    onDiscoveredPeripheral(result);
-                                }
-                            } else if (singleResult != null) {
+                                onDiscoveredPeripherals(results);
+                            } else {
                                 onDiscoveredPeripheral(singleResult);
                             }
                         }
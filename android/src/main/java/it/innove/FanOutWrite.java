@@ -0,0 +1,80 @@
+package it.innove;
+
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Callback;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.Arrays;
+
+/**
+ * Collects the results of one write dispatched to several peripherals and answers once every peripheral
+ * completed it. The peripherals answer from their own GATT threads.
+ */
+public class FanOutWrite {
+    private final String[] addresses;
+    private final Callback callback;
+    private final long startTime = SystemClock.elapsedRealtime();
+    // completion time (ms since startTime) per peripheral, -1 while pending
+    private final long[] durations;
+    private final String[] errors;
+    private int pending;
+
+    public FanOutWrite(String[] addresses, Callback callback) {
+        this.addresses = addresses;
+        this.callback = callback;
+        this.durations = new long[addresses.length];
+        this.errors = new String[addresses.length];
+        this.pending = addresses.length;
+        Arrays.fill(durations, -1);
+    }
+
+    /**
+     * @return the write callback of the peripheral at this index
+     */
+    public Callback callbackFor(int index) {
+        return args -> complete(index, args.length > 0 && args[0] != null ? String.valueOf(args[0]) : null);
+    }
+
+    public void complete(int index, @Nullable String error) {
+        synchronized (this) {
+            // a peripheral answers each write once, this only guards the result against a stray second answer
+            if (durations[index] >= 0) {
+                return;
+            }
+            durations[index] = SystemClock.elapsedRealtime() - startTime;
+            errors[index] = error;
+            if (--pending > 0) {
+                return;
+            }
+        }
+        callback.invoke(null, buildResult());
+    }
+
+    private WritableMap buildResult() {
+        WritableArray results = Arguments.createArray();
+        int failed = 0;
+        long duration = 0;
+        for (int i = 0; i < addresses.length; i++) {
+            WritableMap result = Arguments.createMap();
+            result.putString("peripheral", addresses[i]);
+            result.putDouble("duration", durations[i]);
+            if (errors[i] != null) {
+                result.putString("error", errors[i]);
+                failed++;
+            }
+            results.pushMap(result);
+            duration = Math.max(duration, durations[i]);
+        }
+        WritableMap map = Arguments.createMap();
+        map.putArray("results", results);
+        map.putInt("succeeded", addresses.length - failed);
+        map.putInt("failed", failed);
+        map.putDouble("duration", duration);
+        return map;
+    }
+}
@@ -0,0 +1,155 @@
+package it.innove;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Callback;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * An ordered list of GATT operations run back to back as a single command of a peripheral queue, so no other
+ * command can interleave, and the results of the operations that ran.
+ */
+public class GattTransaction {
+    public enum Type {
+        READ("read"),
+        WRITE("write"),
+        WRITE_WITHOUT_RESPONSE("writeWithoutResponse"),
+        START_NOTIFICATION("startNotification"),
+        STOP_NOTIFICATION("stopNotification"),
+        READ_DESCRIPTOR("readDescriptor"),
+        WRITE_DESCRIPTOR("writeDescriptor");
+
+        final String name;
+
+        Type(String name) {
+            this.name = name;
+        }
+
+        static Type fromName(@Nullable String name) {
+            for (Type type : values()) {
+                if (type.name.equals(name)) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("Unknown operation type: " + name);
+        }
+    }
+
+    public static class Operation {
+        final Type type;
+        final UUID serviceUUID;
+        final UUID characteristicUUID;
+        @Nullable
+        final UUID descriptorUUID;
+        @Nullable
+        final byte[] data;
+
+        public Operation(Type type, UUID serviceUUID, UUID characteristicUUID, @Nullable UUID descriptorUUID,
+                         @Nullable byte[] data) {
+            this.type = type;
+            this.serviceUUID = serviceUUID;
+            this.characteristicUUID = characteristicUUID;
+            this.descriptorUUID = descriptorUUID;
+            this.data = data;
+        }
+    }
+
+    private final List<Operation> operations;
+    // run the remaining operations after a failed one instead of stopping
+    private final boolean continueOnError;
+    final Callback callback;
+    private final WritableArray results = Arguments.createArray();
+    private int index = 0;
+    private boolean stopped = false;
+
+    public GattTransaction(List<Operation> operations, boolean continueOnError, Callback callback) {
+        this.operations = operations;
+        this.continueOnError = continueOnError;
+        this.callback = callback;
+    }
+
+    /**
+     * @throws IllegalArgumentException if an operation is malformed
+     */
+    public static List<Operation> parseOperations(ReadableArray array) {
+        List<Operation> operations = new ArrayList<>(array.size());
+        for (int i = 0; i < array.size(); i++) {
+            ReadableMap item = array.getMap(i);
+            Type type = Type.fromName(item.hasKey("type") ? item.getString("type") : null);
+            UUID serviceUUID = parseUUID(item, "service");
+            UUID characteristicUUID = parseUUID(item, "characteristic");
+            UUID descriptorUUID = type == Type.READ_DESCRIPTOR || type == Type.WRITE_DESCRIPTOR
+                    ? parseUUID(item, "descriptor")
+                    : null;
+            byte[] data = null;
+            if (type == Type.WRITE || type == Type.WRITE_WITHOUT_RESPONSE || type == Type.WRITE_DESCRIPTOR) {
+                if (!item.hasKey("data")) {
+                    throw new IllegalArgumentException("Operation " + type.name + " requires data");
+                }
+                ReadableArray values = item.getArray("data");
+                data = new byte[values.size()];
+                for (int j = 0; j < values.size(); j++) {
+                    data[j] = Integer.valueOf(values.getInt(j)).byteValue();
+                }
+            }
+            operations.add(new Operation(type, serviceUUID, characteristicUUID, descriptorUUID, data));
+        }
+        return operations;
+    }
+
+    private static UUID parseUUID(ReadableMap item, String key) {
+        String uuidString = item.hasKey(key) ? item.getString(key) : null;
+        UUID uuid = UUIDHelper.tryParse(uuidString);
+        if (uuid == null) {
+            throw new IllegalArgumentException("Invalid " + key + " UUID format: " + uuidString);
+        }
+        return uuid;
+    }
+
+    public boolean hasNext() {
+        return !stopped && index < operations.size();
+    }
+
+    public Operation next() {
+        return operations.get(index);
+    }
+
+    public void addSuccess(@Nullable byte[] value) {
+        WritableMap result = nextResult();
+        if (value != null) {
+            result.putArray("value", BleManager.bytesToWritableArray(value));
+        }
+        results.pushMap(result);
+    }
+
+    public void addError(String error) {
+        WritableMap result = nextResult();
+        result.putString("error", error);
+        results.pushMap(result);
+        stopped = !continueOnError;
+    }
+
+    public WritableArray getResults() {
+        return results;
+    }
+
+    private WritableMap nextResult() {
+        Operation operation = operations.get(index++);
+        WritableMap result = Arguments.createMap();
+        result.putString("type", operation.type.name);
+        result.putString("service", UUIDHelper.uuidToString(operation.serviceUUID));
+        result.putString("characteristic", UUIDHelper.uuidToString(operation.characteristicUUID));
+        if (operation.descriptorUUID != null) {
+            result.putString("descriptor", UUIDHelper.uuidToString(operation.descriptorUUID));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,77 @@
+package it.innove;
+
+/**
+ * Collects notified packets for a characteristic and keeps their boundaries and arrival time,
+ * so they can be flushed to JS as a single event once a count, byte or latency limit is hit.
+ */
+public class NotifyBatchContainer extends NotifyBufferContainer {
+    private final int maxCount;
+    private final long maxLatency;
+    private final int[] packetLengths;
+    private final long[] packetTimestamps;
+    private int packetCount = 0;
+    private Runnable flushRunnable;
+
+    public NotifyBatchContainer(int maxCount, int maxBytes, long maxLatency) {
+        super(maxBytes, maxBytes, OverflowPolicy.DROP_NEWEST);
+        this.maxCount = maxCount;
+        this.maxLatency = maxLatency;
+        this.packetLengths = new int[maxCount];
+        this.packetTimestamps = new long[maxCount];
+    }
+
+    public long getMaxLatency() {
+        return maxLatency;
+    }
+
+    public Runnable getFlushRunnable() {
+        return flushRunnable;
+    }
+
+    public void setFlushRunnable(Runnable flushRunnable) {
+        this.flushRunnable = flushRunnable;
+    }
+
+    public boolean fits(int length) {
+        return length <= this.ring.length - this.size;
+    }
+
+    public void add(byte[] value, long timestamp) {
+        // a batch is reset after every flush, so packets are always stored contiguously from 0
+        System.arraycopy(value, 0, this.ring, this.size, value.length);
+        this.size += value.length;
+        packetLengths[packetCount] = value.length;
+        packetTimestamps[packetCount] = timestamp;
+        packetCount++;
+    }
+
+    public boolean isBatchFull() {
+        return packetCount >= maxCount || isBufferFull();
+    }
+
+    public boolean isEmpty() {
+        return packetCount == 0;
+    }
+
+    public byte[] getBytes() {
+        return ring;
+    }
+
+    public int getPacketCount() {
+        return packetCount;
+    }
+
+    public int getPacketLength(int index) {
+        return packetLengths[index];
+    }
+
+    public long getPacketTimestamp(int index) {
+        return packetTimestamps[index];
+    }
+
+    @Override
+    public synchronized void resetBuffer() {
+        super.resetBuffer();
+        packetCount = 0;
+    }
+}
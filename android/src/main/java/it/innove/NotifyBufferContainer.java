@@ -1,42 +1,162 @@
 package it.innove;
 
-import java.nio.ByteBuffer;
+import android.os.SystemClock;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Preallocated ring buffer for buffered notifications.
+ * The binder thread only copies the notified bytes in, full chunks are drained later into a
+ * reused output array so buffering a notification does not allocate.
+ */
 public class NotifyBufferContainer {
-    public ByteBuffer items;
+    public enum OverflowPolicy {
+        DROP_OLDEST,
+        DROP_NEWEST,
+        BLOCK
+    }
+
+    private static final int RING_CHUNKS = 4;
+    // BLOCK waits on the binder thread, which stalls every other BLE callback of the app, so it stays short
+    private static final long BLOCK_TIMEOUT_MS = 20;
+
+    protected final byte[] ring;
+    protected int size = 0;
+    private int head = 0;
+    private final int chunkSize;
+    private final byte[] output;
+    private final OverflowPolicy overflowPolicy;
+    private long droppedBytes = 0;
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private volatile Runnable drainRequest;
 
     public NotifyBufferContainer(int size) {
-        this.items = ByteBuffer.allocate(size);
-    }
-    public void resetBuffer(){
-        this.items.clear();
-    }
-    public byte[] put(byte[] value){
-        byte[] toInsert = null;
-        byte[] rest = null;
-        
-        if (value.length > this.items.remaining()) {
-            int restLength = value.length - this.items.remaining();
-            rest = new byte[restLength];
-            toInsert = new byte[this.items.remaining()];
-            System.arraycopy(value, 0, toInsert, 0, toInsert.length);
-            System.arraycopy(value, toInsert.length, rest, 0, rest.length);
-        } else {
-            toInsert = value;
+        this(size, OverflowPolicy.DROP_OLDEST);
+    }
+
+    public NotifyBufferContainer(int size, OverflowPolicy overflowPolicy) {
+        this(size, size * RING_CHUNKS, overflowPolicy);
+    }
+
+    protected NotifyBufferContainer(int chunkSize, int capacity, OverflowPolicy overflowPolicy) {
+        this.ring = new byte[capacity];
+        this.chunkSize = chunkSize;
+        this.output = new byte[chunkSize];
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Called, at most once until {@link #drainStarted()}, when full chunks are waiting to be drained.
+     */
+    public void setDrainRequest(Runnable drainRequest) {
+        this.drainRequest = drainRequest;
+    }
+
+    public void drainStarted() {
+        drainScheduled.set(false);
+    }
+
+    public synchronized void resetBuffer() {
+        head = 0;
+        size = 0;
+        notifyAll();
+    }
+
+    public synchronized void put(byte[] value) {
+        int offset = 0;
+        int length = value.length;
+        if (length > ring.length && overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+            // only the newest bytes can be kept, dropped in whole chunks so the emitted chunks stay aligned
+            offset = roundUpToChunk(length - ring.length);
+            droppedBytes += offset;
+            length -= offset;
+        }
+
+        while (length > 0) {
+            int free = ring.length - size;
+            if (free == 0) {
+                if (overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+                    // whole chunks are evicted, so the buffer keeps starting on a chunk boundary
+                    int evicted = Math.min(roundUpToChunk(length), size);
+                    head = (head + evicted) % ring.length;
+                    size -= evicted;
+                    droppedBytes += evicted;
+                    continue;
+                }
+                if (overflowPolicy == OverflowPolicy.BLOCK && awaitSpace()) {
+                    continue;
+                }
+                droppedBytes += length;
+                break;
+            }
+
+            int count = Math.min(free, length);
+            int tail = (head + size) % ring.length;
+            int first = Math.min(count, ring.length - tail);
+            System.arraycopy(value, offset, ring, tail, first);
+            System.arraycopy(value, offset + first, ring, 0, count - first);
+            size += count;
+            offset += count;
+            length -= count;
         }
-        
-        this.items.put(toInsert);
 
-        return rest;
+        if (size >= chunkSize) {
+            requestDrain();
+        }
     }
-    public boolean isBufferFull(){
-        return this.items.remaining() == 0;
+
+    /**
+     * Copies the next full chunk into the shared output array.
+     * The returned array is reused by the next call, so it must be consumed first.
+     *
+     * @return the output array, or null if less than a chunk is buffered
+     */
+    public synchronized byte[] poll() {
+        if (size < chunkSize) {
+            return null;
+        }
+        int first = Math.min(chunkSize, ring.length - head);
+        System.arraycopy(ring, head, output, 0, first);
+        System.arraycopy(ring, 0, output, first, chunkSize - first);
+        head = (head + chunkSize) % ring.length;
+        size -= chunkSize;
+        notifyAll();
+        return output;
     }
+
+    public synchronized boolean isBufferFull() {
+        return size == ring.length;
+    }
+
     public int size() {
-        return this.items.limit();
+        return chunkSize;
     }
-    @Override 
-    protected void finalize() throws Throwable {
-        this.items = ByteBuffer.allocate(0);
+
+    public synchronized long getDroppedBytes() {
+        return droppedBytes;
+    }
+
+    private int roundUpToChunk(int length) {
+        return (length + chunkSize - 1) / chunkSize * chunkSize;
+    }
+
+    private void requestDrain() {
+        if (drainRequest != null && drainScheduled.compareAndSet(false, true)) {
+            drainRequest.run();
+        }
+    }
+
+    private boolean awaitSpace() {
+        requestDrain();
+        long deadline = SystemClock.uptimeMillis() + BLOCK_TIMEOUT_MS;
+        try {
+            long remaining;
+            while (size == ring.length && (remaining = deadline - SystemClock.uptimeMillis()) > 0) {
+                wait(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return size < ring.length;
     }
 }
@@ -17,7 +17,7 @@ import android.content.pm.PackageManager;
 import android.content.Context;
 import android.os.Build;
 import android.os.Handler;
-import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Base64;
 import android.util.Log;
 
@@ -38,14 +38,18 @@ import org.json.JSONException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Peripheral wraps the BluetoothDevice and provides methods to convert to JSON.
@@ -57,18 +61,32 @@ public class Peripheral extends BluetoothGattCallback {
     public static final int GATT_INSUFFICIENT_AUTHENTICATION = 5;
     public static final int GATT_AUTH_FAIL = 137;
 
+    public static final int DEFAULT_MTU = 23;
+    // ATT opcode and handle of a Write Request / Command
+    public static final int ATT_WRITE_HEADER_SIZE = 3;
+    public static final int MAX_ATTRIBUTE_VALUE_LENGTH = 512;
+
+    public static final String VALUE_FORMAT_ARRAY = "array";
+    public static final String VALUE_FORMAT_BASE64 = "base64";
+
     protected final BluetoothDevice device;
     private final Map<String, NotifyBufferContainer> bufferedCharacteristics;
+    private final AtomicLong droppedNotificationBytes = new AtomicLong();
+    // characteristics whose notified values are delivered to JS as a base64 string
+    private final Set<String> base64Characteristics = ConcurrentHashMap.newKeySet();
     protected volatile byte[] advertisingDataBytes = new byte[0];
     protected volatile int advertisingRSSI;
     private volatile boolean connected = false;
     private volatile boolean connecting = false;
+    private volatile int mtu = DEFAULT_MTU;
     private BleManager bleManager;
 
     private BluetoothGatt gatt;
 
     private LinkedList<Callback> connectCallbacks = new LinkedList<>();
-    private LinkedList<Callback> retrieveServicesCallbacks = new LinkedList<>();
+    private LinkedList<ServicesRequest> retrieveServicesRequests = new LinkedList<>();
+    // built after each service discovery, null until then and once the GATT table may have changed
+    private volatile CharacteristicIndex characteristicIndex;
     private LinkedList<Callback> readCallbacks = new LinkedList<>();
     private LinkedList<Callback> readDescriptorCallbacks = new LinkedList<>();
     private LinkedList<Callback> writeDescriptorCallbacks = new LinkedList<>();
@@ -76,12 +94,52 @@ public class Peripheral extends BluetoothGattCallback {
     private LinkedList<Callback> writeCallbacks = new LinkedList<>();
     private LinkedList<Callback> registerNotifyCallbacks = new LinkedList<>();
     private LinkedList<Callback> requestMTUCallbacks = new LinkedList<>();
+    private LinkedList<WriteStream> writeStreams = new LinkedList<>();
+    // the prepared write in progress, its chunks are acknowledged in onCharacteristicWrite
+    private ReliableWrite reliableWrite;
+    private GattTransaction transaction;
+
+    private enum GattRequest {
+        READ, WRITE, READ_DESCRIPTOR, WRITE_DESCRIPTOR, READ_RSSI, REQUEST_MTU, DISCOVER_SERVICES,
+        EXECUTE_RELIABLE_WRITE
+    }
 
-    private final Queue<Runnable> commandQueue = new ConcurrentLinkedQueue<>();
-    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static final PeripheralCommand.Options CONTROL_COMMAND =
+            PeripheralCommand.Options.of(PeripheralCommand.Priority.CONTROL);
+    private static final PeripheralCommand.Options INTERACTIVE_COMMAND =
+            PeripheralCommand.Options.of(PeripheralCommand.Priority.INTERACTIVE);
+    private static final PeripheralCommand.Options BULK_COMMAND =
+            PeripheralCommand.Options.of(PeripheralCommand.Priority.BULK);
+
+    private final PriorityBlockingQueue<PeripheralCommand> commandQueue = new PriorityBlockingQueue<>();
+    private final AtomicLong commandSequence = new AtomicLong();
+    // the command running on the handler, it left commandQueue when it started
+    private PeripheralCommand currentCommand;
+    private long commandsExecuted = 0;
+    private long commandsExpired = 0;
+    private long totalCommandWaitTime = 0;
+    private long maxCommandWaitTime = 0;
+    private long commandTimeouts = 0;
+    private final Runnable commandWatchdog = this::onCommandTimeout;
+    // bumped when a command starts, an answer requested by an earlier command is stale
+    private long commandGeneration = 0;
+    // the GATT request the running command waits for, null when none is outstanding
+    private GattRequest pendingRequest;
+    private UUID pendingRequestUuid;
+    private long pendingRequestGeneration;
+    // resolved once, the work already posted to it must keep running on the same thread
+    private final Handler handler;
     private boolean commandQueueBusy = false;
 
+    private static final int WRITE_MAX_RETRIES = 8;
+    private static final long WRITE_RETRY_BASE_DELAY_MS = 2;
+    private static final long WRITE_RETRY_MAX_DELAY_MS = 100;
+
     private final Queue<byte[]> writeQueue = new LinkedList<>();
+    // minimum delay between two chunks of the current write, 0 sends the next chunk as soon as the stack accepts it
+    private long writeChunkDelay = 0;
+    // a delayed chunk or retry of the current write, cancelled when the queues are reset
+    private Runnable pendingWrite;
 
     public Peripheral(BluetoothDevice device, int advertisingRSSI, byte[] scanRecord, BleManager bleManager) {
         this.device = device;
@@ -89,12 +147,14 @@ public class Peripheral extends BluetoothGattCallback {
         this.advertisingRSSI = advertisingRSSI;
         this.advertisingDataBytes = scanRecord;
         this.bleManager = bleManager;
+        this.handler = bleManager.getPeripheralHandler(device.getAddress());
     }
 
     public Peripheral(BluetoothDevice device, BleManager bleManager) {
         this.device = device;
         this.bufferedCharacteristics = new ConcurrentHashMap<String, NotifyBufferContainer>();
         this.bleManager = bleManager;
+        this.handler = bleManager.getPeripheralHandler(device.getAddress());
     }
 
     private void sendConnectionEvent(BluetoothDevice device, int status) {
@@ -118,7 +178,7 @@ public class Peripheral extends BluetoothGattCallback {
     }
 
     public void connect(final Callback callback, Activity activity, ReadableMap options) {
-        mainHandler.post(() -> {
+        handler.post(() -> {
             if (connected) {
                 if (gatt != null) {
                     callback.invoke();
@@ -186,7 +246,7 @@ public class Peripheral extends BluetoothGattCallback {
     public void disconnect(final Callback callback, final boolean force) {
         connected = false;
         connecting = false;
-        mainHandler.post(() -> {
+        handler.post(() -> {
             errorAndClearAllCallbacks("Disconnect called before the command completed");
             resetQueuesAndBuffers();
 
@@ -254,6 +314,14 @@ public class Peripheral extends BluetoothGattCallback {
     }
 
     public WritableMap asWritableMap(BluetoothGatt gatt) {
+        return asWritableMap(gatt, null, false);
+    }
+
+    /**
+     * @param services only serialize these services, null for all of them
+     * @param slim     leave out the permissions and descriptors of the characteristics
+     */
+    public WritableMap asWritableMap(BluetoothGatt gatt, @Nullable Set<UUID> services, boolean slim) {
 
         WritableMap map = asWritableMap();
 
@@ -263,6 +331,9 @@ public class Peripheral extends BluetoothGattCallback {
         if (connected && gatt != null) {
             for (Iterator<BluetoothGattService> it = gatt.getServices().iterator(); it.hasNext(); ) {
                 BluetoothGattService service = it.next();
+                if (services != null && !services.contains(service.getUuid())) {
+                    continue;
+                }
                 WritableMap serviceMap = Arguments.createMap();
                 serviceMap.putString("uuid", UUIDHelper.uuidToString(service.getUuid()));
 
@@ -275,6 +346,10 @@ public class Peripheral extends BluetoothGattCallback {
                     characteristicsMap.putString("characteristic", UUIDHelper.uuidToString(characteristic.getUuid()));
 
                     characteristicsMap.putMap("properties", Helper.decodeProperties(characteristic));
+                    if (slim) {
+                        characteristicsArray.pushMap(characteristicsMap);
+                        continue;
+                    }
 
                     if (characteristic.getPermissions() > 0) {
                         characteristicsMap.putMap("permissions", Helper.decodePermissions(characteristic));
@@ -334,37 +409,61 @@ public class Peripheral extends BluetoothGattCallback {
     @Override
     public void onServicesDiscovered(BluetoothGatt gatt, int status) {
         super.onServicesDiscovered(gatt, status);
-        mainHandler.post(() -> {
+        handler.post(() -> {
+            if (!takeAnswer(GattRequest.DISCOVER_SERVICES, null)) {
+                return;
+            }
             if (gatt == null) {
-                for (Callback retrieveServicesCallback : retrieveServicesCallbacks) {
-                    retrieveServicesCallback.invoke("Error during service retrieval: gatt is null");
+                for (ServicesRequest request : retrieveServicesRequests) {
+                    request.callback.invoke("Error during service retrieval: gatt is null");
                 }
             } else if (status == BluetoothGatt.GATT_SUCCESS) {
-                for (Callback retrieveServicesCallback : retrieveServicesCallbacks) {
-                    WritableMap map = this.asWritableMap(gatt);
-                    retrieveServicesCallback.invoke(null, map);
-                }
+                characteristicIndex = new CharacteristicIndex(gatt.getServices());
+                invokeRetrieveServicesCallbacks(gatt);
             } else {
-                for (Callback retrieveServicesCallback : retrieveServicesCallbacks) {
-                    retrieveServicesCallback.invoke("Error during service retrieval.");
+                for (ServicesRequest request : retrieveServicesRequests) {
+                    request.callback.invoke("Error during service retrieval.");
                 }
             }
-            retrieveServicesCallbacks.clear();
+            retrieveServicesRequests.clear();
             completedCommand();
         });
     }
 
+    private void invokeRetrieveServicesCallbacks(BluetoothGatt gatt) {
+        for (ServicesRequest request : retrieveServicesRequests) {
+            request.callback.invoke(null, asWritableMap(gatt, request.services, request.slim));
+        }
+        retrieveServicesRequests.clear();
+    }
+
     public void errorAndClearAllCallbacks(final String errorMessage) {
+        errorAndClearCommandCallbacks(errorMessage);
+
+        for (Callback connectCallback : connectCallbacks) {
+            connectCallback.invoke(errorMessage);
+        }
+        connectCallbacks.clear();
+
+        for (WriteStream writeStream : writeStreams) {
+            writeStream.finish(errorMessage, null);
+        }
+        writeStreams.clear();
+    }
 
+    /**
+     * Fails the callbacks waiting for a GATT callback, i.e. the ones of the running command.
+     */
+    private void errorAndClearCommandCallbacks(final String errorMessage) {
         for (Callback writeCallback : writeCallbacks) {
             writeCallback.invoke(errorMessage);
         }
         writeCallbacks.clear();
 
-        for (Callback retrieveServicesCallback : retrieveServicesCallbacks) {
-            retrieveServicesCallback.invoke(errorMessage);
+        for (ServicesRequest request : retrieveServicesRequests) {
+            request.callback.invoke(errorMessage);
         }
-        retrieveServicesCallbacks.clear();
+        retrieveServicesRequests.clear();
 
         for (Callback readRSSICallback : readRSSICallbacks) {
             readRSSICallback.invoke(errorMessage);
@@ -396,19 +495,38 @@ public class Peripheral extends BluetoothGattCallback {
         }
         writeDescriptorCallbacks.clear();
 
-        for (Callback connectCallback : connectCallbacks) {
-            connectCallback.invoke(errorMessage);
+        if (reliableWrite != null) {
+            reliableWrite.callback.invoke(errorMessage);
+            reliableWrite = null;
+        }
+
+        if (transaction != null) {
+            transaction.callback.invoke(errorMessage);
+            transaction = null;
         }
-        connectCallbacks.clear();
     }
 
     public void resetQueuesAndBuffers() {
+        characteristicIndex = null;
         writeQueue.clear();
-        commandQueue.clear();
-        commandQueueBusy = false;
+        reliableWrite = null;
+        transaction = null;
+        cancelPendingWrite();
+        List<PeripheralCommand> dropped = new ArrayList<>();
+        synchronized (this) {
+            handler.removeCallbacks(commandWatchdog);
+            commandQueue.drainTo(dropped);
+            currentCommand = null;
+            commandQueueBusy = false;
+            pendingRequest = null;
+        }
         connected = false;
         connecting = false;
         clearBuffers();
+        // the queued commands never run, their callers still get an answer
+        for (PeripheralCommand command : dropped) {
+            command.fail("Device disconnected");
+        }
     }
 
     @Override
@@ -424,7 +542,7 @@ public class Peripheral extends BluetoothGattCallback {
             connected = false;
         }
 
-        mainHandler.post(() -> {
+        handler.post(() -> {
             gatt = gatta;
 
             if (gatt != null && status != BluetoothGatt.GATT_SUCCESS) {
@@ -445,6 +563,7 @@ public class Peripheral extends BluetoothGattCallback {
 
                 errorAndClearAllCallbacks("Device disconnected");
                 resetQueuesAndBuffers();
+                mtu = DEFAULT_MTU;
                 if (gatt != null) {
                     gatt.disconnect();
                     gatt.close();
@@ -484,41 +603,115 @@ public class Peripheral extends BluetoothGattCallback {
         try {
             String charString = characteristic.getUuid().toString();
             String service = characteristic.getService().getUuid().toString();
-            NotifyBufferContainer buffer = this.bufferedCharacteristics
-                    .get(this.bufferedCharacteristicsKey(service, charString));
-            byte[] dataValue = data;
-            // If for some reason the value's length >= 2*buffer size this will be able to
-            // handle it
-            while (dataValue != null) {
-                byte[] rest = null;
-                if (buffer != null) {
-                    rest = buffer.put(dataValue);
-                    if (buffer.isBufferFull()) {
-
-                        // fetch and reset
-                        dataValue = buffer.items.array();
-                        buffer.resetBuffer();
-                    } else {
-                        return;
-                    }
-                }
-
-                WritableMap map = Arguments.createMap();
-                map.putString("peripheral", device.getAddress());
-                map.putString("characteristic", charString);
-                map.putString("service", service);
-                map.putArray("value", BleManager.bytesToWritableArray(dataValue));
-                bleManager.emitOnDidUpdateValueForCharacteristic(map);
-
-                // Check if rest exists. If so it needs to be added to the clean buffer
-                dataValue = rest;
+            String key = this.bufferedCharacteristicsKey(service, charString);
+            NotifyBufferContainer buffer = this.bufferedCharacteristics.get(key);
+            boolean base64 = this.base64Characteristics.contains(key);
+            if (buffer instanceof NotifyBatchContainer) {
+                onBatchedCharacteristicChanged((NotifyBatchContainer) buffer, service, charString, base64, data);
+                return;
+            }
+            if (buffer != null) {
+                // only copies into the ring buffer, full chunks are emitted by drainBuffer
+                buffer.put(data);
+                return;
             }
+            emitCharacteristicValue(service, charString, base64, data);
 
         } catch (Exception e) {
             Log.d(BleManager.LOG_TAG, "onCharacteristicChanged ERROR: " + e);
         }
     }
 
+    private void emitCharacteristicValue(String service, String charString, boolean base64, byte[] value) {
+        WritableMap map = Arguments.createMap();
+        map.putString("peripheral", device.getAddress());
+        map.putString("characteristic", charString);
+        map.putString("service", service);
+        if (base64) {
+            // A single string crosses the bridge instead of one boxed int per byte
+            map.putArray("value", Arguments.createArray());
+            map.putString("data", Base64.encodeToString(value, Base64.NO_WRAP));
+        } else {
+            map.putArray("value", BleManager.bytesToWritableArray(value));
+        }
+        bleManager.emitOnDidUpdateValueForCharacteristic(map);
+    }
+
+    private void drainBuffer(NotifyBufferContainer buffer, String service, String charString, String bufferKey) {
+        buffer.drainStarted();
+        boolean base64 = this.base64Characteristics.contains(bufferKey);
+        byte[] chunk;
+        while ((chunk = buffer.poll()) != null) {
+            emitCharacteristicValue(service, charString, base64, chunk);
+        }
+    }
+
+    private void onBatchedCharacteristicChanged(NotifyBatchContainer batch, String service, String charString,
+                                                boolean base64, byte[] data) {
+        long timestamp = System.currentTimeMillis();
+        synchronized (batch) {
+            if (!batch.fits(data.length)) {
+                flushBatch(batch, service, charString, base64);
+            }
+            if (!batch.fits(data.length)) {
+                // the packet alone exceeds the byte budget of the batch, deliver it on its own
+                emitCharacteristicValues(service, charString, base64, data, new int[]{data.length},
+                        new long[]{timestamp}, 1);
+                return;
+            }
+
+            batch.add(data, timestamp);
+            if (batch.isBatchFull()) {
+                flushBatch(batch, service, charString, base64);
+            } else if (batch.getPacketCount() == 1 && batch.getMaxLatency() > 0) {
+                handler.postDelayed(batch.getFlushRunnable(), batch.getMaxLatency());
+            }
+        }
+    }
+
+    private void flushBatch(NotifyBatchContainer batch, String service, String charString, boolean base64) {
+        synchronized (batch) {
+            handler.removeCallbacks(batch.getFlushRunnable());
+            if (batch.isEmpty()) {
+                return;
+            }
+            int count = batch.getPacketCount();
+            int[] lengths = new int[count];
+            long[] timestamps = new long[count];
+            for (int i = 0; i < count; i++) {
+                lengths[i] = batch.getPacketLength(i);
+                timestamps[i] = batch.getPacketTimestamp(i);
+            }
+            emitCharacteristicValues(service, charString, base64, batch.getBytes(), lengths, timestamps, count);
+            batch.resetBuffer();
+        }
+    }
+
+    private void emitCharacteristicValues(String service, String charString, boolean base64, byte[] bytes,
+                                          int[] lengths, long[] timestamps, int count) {
+        WritableArray values = Arguments.createArray();
+        int offset = 0;
+        for (int i = 0; i < count; i++) {
+            WritableMap value = Arguments.createMap();
+            if (base64) {
+                value.putArray("value", Arguments.createArray());
+                value.putString("data", Base64.encodeToString(bytes, offset, lengths[i], Base64.NO_WRAP));
+            } else {
+                value.putArray("value", BleManager.bytesToWritableArray(bytes, offset, lengths[i]));
+            }
+            value.putDouble("timestamp", timestamps[i]);
+            values.pushMap(value);
+            offset += lengths[i];
+        }
+
+        WritableMap map = Arguments.createMap();
+        map.putString("peripheral", device.getAddress());
+        map.putString("characteristic", charString);
+        map.putString("service", service);
+        map.putArray("values", values);
+        bleManager.emitOnDidUpdateValuesForCharacteristic(map);
+    }
+
     @Override
     public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.TIRAMISU) {
@@ -534,7 +727,15 @@ public class Peripheral extends BluetoothGattCallback {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
             super.onCharacteristicRead(gatt, characteristic, data, status);
         }
-        mainHandler.post(() -> {
+        handler.post(() -> {
+            if (!takeAnswer(GattRequest.READ, characteristic.getUuid())) {
+                return;
+            }
+            if (transaction != null) {
+                onTransactionOperation(status == BluetoothGatt.GATT_SUCCESS, copyOf(data),
+                        "Error reading " + characteristic.getUuid() + " status=" + status);
+                return;
+            }
             if (status != BluetoothGatt.GATT_SUCCESS) {
                 if (status == GATT_AUTH_FAIL || status == GATT_INSUFFICIENT_AUTHENTICATION) {
                     Log.d(BleManager.LOG_TAG, "Read needs bonding");
@@ -563,15 +764,35 @@ public class Peripheral extends BluetoothGattCallback {
     public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
         super.onCharacteristicWrite(gatt, characteristic, status);
 
-        mainHandler.post(() -> {
-            if (!writeQueue.isEmpty()) {
+        handler.post(() -> {
+            if (!takeAnswer(GattRequest.WRITE, characteristic.getUuid())) {
+                return;
+            }
+            if (reliableWrite != null) {
+                onReliableWriteChunk(characteristic, status);
+                return;
+            }
+            if (transaction != null) {
+                onTransactionOperation(status == BluetoothGatt.GATT_SUCCESS, null,
+                        "Error writing " + characteristic.getUuid() + " status=" + status);
+                return;
+            }
+            if (!writeQueue.isEmpty() && status == BluetoothGatt.GATT_SUCCESS) {
+                // the command timeout applies to every chunk, a long write that keeps progressing is not failed
+                restartCommandWatchdog();
                 byte[] data = writeQueue.poll();
-                doWrite(characteristic, data);
+                if (writeChunkDelay > 0) {
+                    scheduleWrite(() -> doWrite(characteristic, data), writeChunkDelay);
+                } else {
+                    doWrite(characteristic, data);
+                }
             } else {
+                writeQueue.clear();
                 if (status != BluetoothGatt.GATT_SUCCESS) {
                     if (status == GATT_AUTH_FAIL || status == GATT_INSUFFICIENT_AUTHENTICATION) {
                         Log.d(BleManager.LOG_TAG, "Write needs bonding");
-                        // *not* doing completedCommand()
+                        // *not* doing completedCommand(), the stack answers again once bonded
+                        expectAnswer(GattRequest.WRITE, characteristic.getUuid());
                         return;
                     }
                     for (Callback writeCallback : writeCallbacks) {
@@ -591,7 +812,15 @@ public class Peripheral extends BluetoothGattCallback {
 
     @Override
     public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
-        mainHandler.post(() -> {
+        handler.post(() -> {
+            if (!takeAnswer(GattRequest.WRITE_DESCRIPTOR, descriptor.getUuid())) {
+                return;
+            }
+            if (transaction != null) {
+                onTransactionOperation(status == BluetoothGatt.GATT_SUCCESS, null,
+                        "Error writing descriptor status=" + status);
+                return;
+            }
             if (!registerNotifyCallbacks.isEmpty()) {
                 if (status == BluetoothGatt.GATT_SUCCESS) {
                     for (Callback registerNotifyCallback : registerNotifyCallbacks) {
@@ -632,7 +861,15 @@ public class Peripheral extends BluetoothGattCallback {
     public void onDescriptorRead(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
         super.onDescriptorRead(gatt, descriptor, status);
 
-        mainHandler.post(() -> {
+        handler.post(() -> {
+            if (!takeAnswer(GattRequest.READ_DESCRIPTOR, descriptor.getUuid())) {
+                return;
+            }
+            if (transaction != null) {
+                onTransactionOperation(status == BluetoothGatt.GATT_SUCCESS, copyOf(descriptor.getValue()),
+                        "Error reading descriptor " + descriptor.getUuid() + " status=" + status);
+                return;
+            }
             if (status != BluetoothGatt.GATT_SUCCESS) {
                 if (status == GATT_AUTH_FAIL || status == GATT_INSUFFICIENT_AUTHENTICATION) {
                     Log.d(BleManager.LOG_TAG, "Read needs bonding");
@@ -663,7 +900,10 @@ public class Peripheral extends BluetoothGattCallback {
     public void onReadRemoteRssi(BluetoothGatt gatt, int rssi, int status) {
         super.onReadRemoteRssi(gatt, rssi, status);
 
-        mainHandler.post(() -> {
+        handler.post(() -> {
+            if (!takeAnswer(GattRequest.READ_RSSI, null)) {
+                return;
+            }
             if (!readRSSICallbacks.isEmpty()) {
                 if (status == BluetoothGatt.GATT_SUCCESS) {
                     updateRssi(rssi);
@@ -687,9 +927,47 @@ public class Peripheral extends BluetoothGattCallback {
         return serviceUUID + "-" + characteristicUUID;
     }
 
+    private void releaseBuffer(@Nullable NotifyBufferContainer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        if (buffer instanceof NotifyBatchContainer) {
+            handler.removeCallbacks(((NotifyBatchContainer) buffer).getFlushRunnable());
+        }
+        buffer.setDrainRequest(null);
+        buffer.resetBuffer();
+        droppedNotificationBytes.addAndGet(buffer.getDroppedBytes());
+    }
+
+    public synchronized WritableMap getCommandQueueStatistics() {
+        WritableMap map = Arguments.createMap();
+        map.putInt("commandQueueDepth", commandQueue.size() + (currentCommand != null ? 1 : 0));
+        map.putDouble("commandsExecuted", commandsExecuted);
+        map.putDouble("commandsExpired", commandsExpired);
+        map.putDouble("averageCommandWaitTime", commandsExecuted > 0 ? (double) totalCommandWaitTime / commandsExecuted : 0);
+        map.putDouble("maxCommandWaitTime", maxCommandWaitTime);
+        map.putDouble("commandTimeouts", commandTimeouts);
+        return map;
+    }
+
+    public long getDroppedNotificationBytes() {
+        long dropped = droppedNotificationBytes.get();
+        for (NotifyBufferContainer buffer : this.bufferedCharacteristics.values()) {
+            dropped += buffer.getDroppedBytes();
+        }
+        return dropped;
+    }
+
     private void clearBuffers() {
-        for (Map.Entry<String, NotifyBufferContainer> entry : this.bufferedCharacteristics.entrySet())
-            entry.getValue().resetBuffer();
+        for (Map.Entry<String, NotifyBufferContainer> entry : this.bufferedCharacteristics.entrySet()) {
+            NotifyBufferContainer buffer = entry.getValue();
+            synchronized (buffer) {
+                if (buffer instanceof NotifyBatchContainer) {
+                    handler.removeCallbacks(((NotifyBatchContainer) buffer).getFlushRunnable());
+                }
+                buffer.resetBuffer();
+            }
+        }
     }
 
     private void setNotify(UUID serviceUUID, UUID characteristicUUID, final Boolean notify, Callback callback) {
@@ -699,27 +977,38 @@ public class Peripheral extends BluetoothGattCallback {
             return;
         }
 
-        BluetoothGattService service = gatt.getService(serviceUUID);
-        final BluetoothGattCharacteristic characteristic = findNotifyCharacteristic(service, characteristicUUID);
-
-        if (characteristic == null) {
-            callback.invoke("Characteristic " + characteristicUUID + " not found");
+        String error = writeNotificationState(serviceUUID, characteristicUUID, notify);
+        if (error != null) {
+            callback.invoke(error);
             completedCommand();
             return;
         }
+        // answered by onDescriptorWrite
+        registerNotifyCallbacks.addLast(callback);
+    }
+
+    /**
+     * Enables or disables the notifications of the characteristic and starts writing its CCCD.
+     *
+     * @return why it could not be started, null if the descriptor write was started
+     */
+    @Nullable
+    private String writeNotificationState(UUID serviceUUID, UUID characteristicUUID, boolean notify) {
+        final BluetoothGattCharacteristic characteristic = lookupCharacteristic(serviceUUID, characteristicUUID,
+                CharacteristicIndex.Lookup.NOTIFY);
+
+        if (characteristic == null) {
+            return "Characteristic " + characteristicUUID + " not found";
+        }
 
         if (!gatt.setCharacteristicNotification(characteristic, notify)) {
-            callback.invoke("Failed to register notification for " + characteristicUUID);
-            completedCommand();
-            return;
+            return "Failed to register notification for " + characteristicUUID;
         }
 
         final BluetoothGattDescriptor descriptor = characteristic
                 .getDescriptor(UUIDHelper.uuidFromString(CHARACTERISTIC_NOTIFICATION_CONFIG));
         if (descriptor == null) {
-            callback.invoke("Set notification failed for " + characteristicUUID);
-            completedCommand();
-            return;
+            return "Set notification failed for " + characteristicUUID;
         }
 
         // Prefer notify over indicate
@@ -735,9 +1024,7 @@ public class Peripheral extends BluetoothGattCallback {
         } else {
             String msg = "Characteristic " + characteristicUUID + " does not have NOTIFY or INDICATE property set";
             Log.d(BleManager.LOG_TAG, msg);
-            callback.invoke(msg);
-            completedCommand();
-            return;
+            return msg;
         }
         final byte[] finalValue = notify ? value : BluetoothGattDescriptor.DISABLE_NOTIFICATION_VALUE;
 
@@ -745,34 +1032,52 @@ public class Peripheral extends BluetoothGattCallback {
         try {
             result = gatt.setCharacteristicNotification(characteristic, notify);
             // Then write to descriptor
-            registerNotifyCallbacks.addLast(callback);
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
-                result &= BluetoothStatusCodes.SUCCESS == gatt.writeDescriptor(descriptor, finalValue);
-            } else {
-                descriptor.setValue(finalValue);
-                result &= gatt.writeDescriptor(descriptor);
-            }
+            result &= writeDescriptorValue(descriptor, finalValue);
         } catch (Exception e) {
             Log.d(BleManager.LOG_TAG, "Exception in setNotify", e);
         }
 
-        if (!result) {
-            for (Callback registerNotifyCallback : registerNotifyCallbacks) {
-                registerNotifyCallback.invoke("writeDescriptor failed for descriptor: " + descriptor.getUuid(), null);
-            }
-            registerNotifyCallbacks.clear();
-            completedCommand();
+        return result ? null : "writeDescriptor failed for descriptor: " + descriptor.getUuid();
+    }
+
+    private boolean writeDescriptorValue(BluetoothGattDescriptor descriptor, byte[] data) {
+        expectAnswer(GattRequest.WRITE_DESCRIPTOR, descriptor.getUuid());
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            return BluetoothStatusCodes.SUCCESS == gatt.writeDescriptor(descriptor, data);
         }
+        descriptor.setValue(data);
+        return gatt.writeDescriptor(descriptor);
     }
 
     public void registerNotify(UUID serviceUUID, UUID characteristicUUID, Integer buffer, Callback callback) {
-        if (!enqueue(() -> {
+        registerNotify(serviceUUID, characteristicUUID, buffer > 1 ? new NotifyBufferContainer(buffer) : null,
+                VALUE_FORMAT_ARRAY, callback);
+    }
+
+    public void registerNotify(UUID serviceUUID, UUID characteristicUUID, @Nullable NotifyBufferContainer buffer,
+                               String valueFormat, Callback callback) {
+        if (!enqueue(INTERACTIVE_COMMAND, callback, () -> {
             Log.d(BleManager.LOG_TAG, "registerNotify");
-            if (buffer > 1) {
+            String serviceKey = serviceUUID.toString();
+            String characteristicKey = characteristicUUID.toString();
+            String bufferKey = this.bufferedCharacteristicsKey(serviceKey, characteristicKey);
+            releaseBuffer(this.bufferedCharacteristics.remove(bufferKey));
+            if (buffer instanceof NotifyBatchContainer) {
+                Log.d(BleManager.LOG_TAG, "registerNotify using batch");
+                NotifyBatchContainer batch = (NotifyBatchContainer) buffer;
+                batch.setFlushRunnable(() -> flushBatch(batch, serviceKey, characteristicKey,
+                        this.base64Characteristics.contains(bufferKey)));
+                this.bufferedCharacteristics.put(bufferKey, batch);
+            } else if (buffer != null) {
                 Log.d(BleManager.LOG_TAG, "registerNotify using buffer");
-                String bufferKey = this.bufferedCharacteristicsKey(serviceUUID.toString(),
-                        characteristicUUID.toString());
-                this.bufferedCharacteristics.put(bufferKey, new NotifyBufferContainer(buffer));
+                Runnable drain = () -> drainBuffer(buffer, serviceKey, characteristicKey, bufferKey);
+                buffer.setDrainRequest(() -> handler.post(drain));
+                this.bufferedCharacteristics.put(bufferKey, buffer);
+            }
+            if (VALUE_FORMAT_BASE64.equals(valueFormat)) {
+                this.base64Characteristics.add(bufferKey);
+            } else {
+                this.base64Characteristics.remove(bufferKey);
             }
             this.setNotify(serviceUUID, characteristicUUID, true, callback);
         })) {
@@ -781,19 +1086,45 @@ public class Peripheral extends BluetoothGattCallback {
     }
 
     public void removeNotify(UUID serviceUUID, UUID characteristicUUID, Callback callback) {
-        if (!enqueue(() -> {
+        if (!enqueue(INTERACTIVE_COMMAND, callback, () -> {
             Log.d(BleManager.LOG_TAG, "removeNotify");
             String bufferKey = this.bufferedCharacteristicsKey(serviceUUID.toString(), characteristicUUID.toString());
-            if (this.bufferedCharacteristics.containsKey(bufferKey)) {
-                NotifyBufferContainer buffer = this.bufferedCharacteristics.get(bufferKey);
-                this.bufferedCharacteristics.remove(bufferKey);
-            }
+            releaseBuffer(this.bufferedCharacteristics.remove(bufferKey));
+            this.base64Characteristics.remove(bufferKey);
             this.setNotify(serviceUUID, characteristicUUID, false, callback);
         })) {
             Log.e(BleManager.LOG_TAG, "Could not enqueue setNotify command to remove notify");
         }
     }
 
+    /**
+     * Resolves a characteristic through the index built at service discovery, or with a linear lookup in the
+     * services of the GATT if no index is available.
+     */
+    private BluetoothGattCharacteristic lookupCharacteristic(UUID serviceUUID, UUID characteristicUUID,
+                                                             CharacteristicIndex.Lookup lookup) {
+        CharacteristicIndex index = characteristicIndex;
+        if (index != null) {
+            return index.get(serviceUUID, characteristicUUID, lookup);
+        }
+
+        BluetoothGattService service = gatt.getService(serviceUUID);
+        switch (lookup) {
+            case READ:
+                return findReadableCharacteristic(service, characteristicUUID);
+            case WRITE:
+                return findWritableCharacteristic(service, characteristicUUID,
+                        BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
+            case WRITE_NO_RESPONSE:
+                return findWritableCharacteristic(service, characteristicUUID,
+                        BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE);
+            case NOTIFY:
+                return findNotifyCharacteristic(service, characteristicUUID);
+            default:
+                return findCharacteristic(service, characteristicUUID);
+        }
+    }
+
     // Some devices reuse UUIDs across characteristics, so we can't use
     // service.getCharacteristic(characteristicUUID)
     // instead check the UUID and properties for each characteristic in the service
@@ -830,15 +1161,15 @@ public class Peripheral extends BluetoothGattCallback {
     }
 
     public void read(UUID serviceUUID, UUID characteristicUUID, final Callback callback) {
-        enqueue(() -> {
+        enqueue(INTERACTIVE_COMMAND, callback, () -> {
             if (!isConnected() || gatt == null) {
                 callback.invoke("Device is not connected", null);
                 completedCommand();
                 return;
             }
 
-            BluetoothGattService service = gatt.getService(serviceUUID);
-            final BluetoothGattCharacteristic characteristic = findReadableCharacteristic(service, characteristicUUID);
+            final BluetoothGattCharacteristic characteristic = lookupCharacteristic(serviceUUID, characteristicUUID,
+                    CharacteristicIndex.Lookup.READ);
 
             if (characteristic == null) {
                 callback.invoke("Characteristic " + characteristicUUID + " not found.", null);
@@ -847,7 +1178,7 @@ public class Peripheral extends BluetoothGattCallback {
             }
 
             this.readCallbacks.addLast(callback);
-            if (!gatt.readCharacteristic(characteristic)) {
+            if (!readCharacteristic(characteristic)) {
                 for (Callback readCallback : readCallbacks) {
                     readCallback.invoke("Read failed", null);
                 }
@@ -857,17 +1188,133 @@ public class Peripheral extends BluetoothGattCallback {
         });
     }
 
+    public void runTransaction(GattTransaction transaction) {
+        runTransaction(transaction, INTERACTIVE_COMMAND);
+    }
+
+    /**
+     * Runs the operations of the transaction one after the other as a single command, so no other command runs
+     * in between, and answers once with the results of the operations that ran, in order.
+     */
+    public void runTransaction(GattTransaction transaction, PeripheralCommand.Options commandOptions) {
+        enqueue(commandOptions, transaction.callback, () -> {
+            if (!isConnected() || gatt == null) {
+                transaction.callback.invoke("Device is not connected", null);
+                completedCommand();
+                return;
+            }
+
+            this.transaction = transaction;
+            runNextTransactionOperation();
+        });
+    }
+
+    private void runNextTransactionOperation() {
+        GattTransaction current = transaction;
+        while (current.hasNext()) {
+            String error = startTransactionOperation(current.next());
+            if (error == null) {
+                // the command timeout applies to every operation of the transaction
+                restartCommandWatchdog();
+                return;
+            }
+            current.addError(error);
+        }
+        transaction = null;
+        current.callback.invoke(null, current.getResults());
+        completedCommand();
+    }
+
+    /**
+     * @param value the value read, null for writes
+     */
+    private void onTransactionOperation(boolean success, @Nullable byte[] value, String error) {
+        if (success) {
+            transaction.addSuccess(value);
+        } else {
+            transaction.addError(error);
+        }
+        runNextTransactionOperation();
+    }
+
+    /**
+     * @return why the operation could not be started, null if its GATT callback will follow
+     */
+    @Nullable
+    private String startTransactionOperation(GattTransaction.Operation operation) {
+        UUID characteristicUUID = operation.characteristicUUID;
+        switch (operation.type) {
+            case READ: {
+                BluetoothGattCharacteristic characteristic = lookupCharacteristic(operation.serviceUUID,
+                        characteristicUUID, CharacteristicIndex.Lookup.READ);
+                if (characteristic == null) {
+                    return "Characteristic " + characteristicUUID + " not found.";
+                }
+                return readCharacteristic(characteristic) ? null : "Read failed";
+            }
+            case WRITE:
+            case WRITE_WITHOUT_RESPONSE: {
+                int writeType = operation.type == GattTransaction.Type.WRITE
+                        ? BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT
+                        : BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE;
+                BluetoothGattCharacteristic characteristic = lookupCharacteristic(operation.serviceUUID,
+                        characteristicUUID, CharacteristicIndex.Lookup.forWriteType(writeType));
+                if (characteristic == null) {
+                    return "Characteristic " + characteristicUUID + " not found.";
+                }
+                // values are not chunked inside a transaction
+                if (operation.data.length > getMaximumWriteValueLength(writeType)) {
+                    return "Value of " + operation.data.length + " bytes does not fit in a single write";
+                }
+                characteristic.setWriteType(writeType);
+                return writeCharacteristic(characteristic, operation.data) == BluetoothStatusCodes.SUCCESS
+                        ? null
+                        : "Write failed";
+            }
+            case START_NOTIFICATION:
+            case STOP_NOTIFICATION: {
+                // plain notifications, as registerNotify without a buffer
+                String bufferKey = bufferedCharacteristicsKey(operation.serviceUUID.toString(),
+                        characteristicUUID.toString());
+                releaseBuffer(bufferedCharacteristics.remove(bufferKey));
+                base64Characteristics.remove(bufferKey);
+                return writeNotificationState(operation.serviceUUID, characteristicUUID,
+                        operation.type == GattTransaction.Type.START_NOTIFICATION);
+            }
+            case READ_DESCRIPTOR:
+            case WRITE_DESCRIPTOR: {
+                BluetoothGattCharacteristic characteristic = lookupCharacteristic(operation.serviceUUID,
+                        characteristicUUID, CharacteristicIndex.Lookup.ANY);
+                if (characteristic == null) {
+                    return "Characteristic " + characteristicUUID + " not found.";
+                }
+                BluetoothGattDescriptor descriptor = characteristic.getDescriptor(operation.descriptorUUID);
+                if (descriptor == null) {
+                    return "Descriptor " + operation.descriptorUUID + " not found.";
+                }
+                if (operation.type == GattTransaction.Type.READ_DESCRIPTOR) {
+                    return readDescriptor(descriptor) ? null : "Reading descriptor failed";
+                }
+                return writeDescriptorValue(descriptor, operation.data)
+                        ? null
+                        : "writeDescriptor failed for descriptor: " + descriptor.getUuid();
+            }
+            default:
+                return "Unsupported operation " + operation.type;
+        }
+    }
+
     public void readDescriptor(UUID serviceUUID, UUID characteristicUUID, UUID descriptorUUID,
                                final Callback callback) {
-        enqueue(() -> {
+        enqueue(INTERACTIVE_COMMAND, callback, () -> {
             if (!isConnected() || gatt == null) {
                 callback.invoke("Device is not connected", null);
                 completedCommand();
                 return;
             }
 
-            BluetoothGattService service = gatt.getService(serviceUUID);
-            final BluetoothGattCharacteristic characteristic = findReadableCharacteristic(service, characteristicUUID);
+            final BluetoothGattCharacteristic characteristic = lookupCharacteristic(serviceUUID, characteristicUUID,
+                    CharacteristicIndex.Lookup.READ);
 
             if (characteristic == null) {
                 callback.invoke("Characteristic " + characteristicUUID + " not found.", null);
@@ -894,7 +1341,7 @@ public class Peripheral extends BluetoothGattCallback {
             }
 
             this.readDescriptorCallbacks.addLast(callback);
-            if (!gatt.readDescriptor(descriptor)) {
+            if (!readDescriptor(descriptor)) {
                 for (Callback readDescriptorCallback : readDescriptorCallbacks) {
                     readDescriptorCallback.invoke("Reading descriptor failed", null);
                 }
@@ -905,15 +1352,15 @@ public class Peripheral extends BluetoothGattCallback {
     }
 
     public void writeDescriptor(UUID serviceUUID, UUID characteristicUUID, UUID descriptorUUID, byte[] data, Callback callback) {
-        enqueue(() -> {
+        enqueue(INTERACTIVE_COMMAND, callback, () -> {
             if (!isConnected() || gatt == null) {
                 callback.invoke("Device is not connected", null);
                 completedCommand();
                 return;
             }
 
-            BluetoothGattService service = gatt.getService(serviceUUID);
-            BluetoothGattCharacteristic characteristic = findCharacteristic(service, characteristicUUID);
+            BluetoothGattCharacteristic characteristic = lookupCharacteristic(serviceUUID, characteristicUUID,
+                    CharacteristicIndex.Lookup.ANY);
 
             if (characteristic == null) {
                 callback.invoke("Characteristic " + characteristicUUID + " not found.");
@@ -929,14 +1376,7 @@ public class Peripheral extends BluetoothGattCallback {
             }
 
             this.writeDescriptorCallbacks.add(callback);
-            boolean success;
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
-                success = BluetoothStatusCodes.SUCCESS == gatt.writeDescriptor(descriptor, data);
-            } else {
-                descriptor.setValue(data);
-                success = gatt.writeDescriptor(descriptor);
-            }
-            if (!success) {
+            if (!writeDescriptorValue(descriptor, data)) {
                 for (Callback writeCallback : writeDescriptorCallbacks) {
                     writeCallback.invoke("writeDescriptor failed for descriptor: " + descriptor.getUuid(), null);
                 }
@@ -955,9 +1395,13 @@ public class Peripheral extends BluetoothGattCallback {
         return copy;
     }
 
-    private boolean enqueue(Runnable command) {
+    /**
+     * @param callback failed if the command expires or is dropped before it runs
+     */
+    private boolean enqueue(PeripheralCommand.Options options, @Nullable Callback callback, Runnable command) {
 
-        final boolean result = commandQueue.add(command);
+        final boolean result = commandQueue.add(new PeripheralCommand(command, options,
+                commandSequence.getAndIncrement(), callback));
 
         if (result) {
             nextCommand();
@@ -968,11 +1412,85 @@ public class Peripheral extends BluetoothGattCallback {
     }
 
     private void completedCommand() {
-        commandQueue.poll();
-        commandQueueBusy = false;
+        synchronized (this) {
+            handler.removeCallbacks(commandWatchdog);
+            currentCommand = null;
+            commandQueueBusy = false;
+            pendingRequest = null;
+        }
         nextCommand();
     }
 
+    /**
+     * Records the GATT request the running command is about to issue, so its answer can be told apart from a
+     * late answer to a command the watchdog already gave up on.
+     */
+    private synchronized void expectAnswer(GattRequest request, @Nullable UUID uuid) {
+        pendingRequest = request;
+        pendingRequestUuid = uuid;
+        pendingRequestGeneration = commandGeneration;
+    }
+
+    /**
+     * @return true if this GATT answer is the one the running command waits for, false for a stale answer
+     * that must not complete the command
+     */
+    private synchronized boolean takeAnswer(GattRequest request, @Nullable UUID uuid) {
+        if (currentCommand == null || pendingRequest != request || pendingRequestGeneration != commandGeneration
+                || !Objects.equals(pendingRequestUuid, uuid)) {
+            Log.d(BleManager.LOG_TAG, "Dropping stale " + request + " answer on peripheral: " + device.getAddress());
+            return false;
+        }
+        pendingRequest = null;
+        return true;
+    }
+
+    private boolean readCharacteristic(BluetoothGattCharacteristic characteristic) {
+        expectAnswer(GattRequest.READ, characteristic.getUuid());
+        return gatt.readCharacteristic(characteristic);
+    }
+
+    private boolean readDescriptor(BluetoothGattDescriptor descriptor) {
+        expectAnswer(GattRequest.READ_DESCRIPTOR, descriptor.getUuid());
+        return gatt.readDescriptor(descriptor);
+    }
+
+    /**
+     * The stack never answered the running command: fail what waits for it and move on, otherwise every
+     * following command of this peripheral would hang until a reconnect.
+     */
+    private void onCommandTimeout() {
+        synchronized (this) {
+            if (currentCommand == null) {
+                return;
+            }
+            commandTimeouts++;
+        }
+        Log.w(BleManager.LOG_TAG, "Command timed out on peripheral: " + device.getAddress());
+        writeQueue.clear();
+        cancelPendingWrite();
+        if (reliableWrite != null && gatt != null) {
+            try {
+                gatt.abortReliableWrite();
+            } catch (Exception e) {
+                Log.d(BleManager.LOG_TAG, "Error aborting reliable write", e);
+            }
+        }
+        errorAndClearCommandCallbacks("Command timed out");
+        completedCommand();
+    }
+
+    private synchronized void restartCommandWatchdog() {
+        if (currentCommand == null) {
+            return;
+        }
+        handler.removeCallbacks(commandWatchdog);
+        long commandTimeout = currentCommand.getCommandTimeout(bleManager.getCommandTimeout());
+        if (commandTimeout > 0) {
+            handler.postDelayed(commandWatchdog, commandTimeout);
+        }
+    }
+
     private void nextCommand() {
         synchronized (this) {
             if (commandQueueBusy) {
@@ -980,15 +1498,33 @@ public class Peripheral extends BluetoothGattCallback {
                 return;
             }
 
-            final Runnable nextCommand = commandQueue.peek();
-            if (nextCommand == null) {
+            long now = SystemClock.uptimeMillis();
+            PeripheralCommand command;
+            while ((command = commandQueue.poll()) != null && command.isExpired(now)) {
+                Log.d(BleManager.LOG_TAG, "Command expired after " + command.getWaitTime(now) + "ms");
+                commandsExpired++;
+                handler.post(command::expire);
+            }
+            if (command == null) {
                 Log.d(BleManager.LOG_TAG, "Command queue empty");
                 return;
             }
 
+            long waitTime = command.getWaitTime(now);
+            commandsExecuted++;
+            totalCommandWaitTime += waitTime;
+            maxCommandWaitTime = Math.max(maxCommandWaitTime, waitTime);
+
             // Execute the next command in the queue
             commandQueueBusy = true;
-            mainHandler.post(new Runnable() {
+            currentCommand = command;
+            commandGeneration++;
+            long commandTimeout = command.getCommandTimeout(bleManager.getCommandTimeout());
+            if (commandTimeout > 0) {
+                handler.postDelayed(commandWatchdog, commandTimeout);
+            }
+            final PeripheralCommand nextCommand = command;
+            handler.post(new Runnable() {
                 @Override
                 public void run() {
                     try {
@@ -1003,7 +1539,7 @@ public class Peripheral extends BluetoothGattCallback {
     }
 
     public void readRSSI(final Callback callback) {
-        if (!enqueue(() -> {
+        if (!enqueue(INTERACTIVE_COMMAND, callback, () -> {
             if (!isConnected()) {
                 callback.invoke("Device is not connected", null);
                 completedCommand();
@@ -1014,6 +1550,7 @@ public class Peripheral extends BluetoothGattCallback {
                 return;
             } else {
                 readRSSICallbacks.addLast(callback);
+                expectAnswer(GattRequest.READ_RSSI, null);
                 if (!gatt.readRemoteRssi()) {
                     for (Callback readRSSICallback : readRSSICallbacks) {
                         readRSSICallback.invoke("Read RSSI failed", null);
@@ -1028,12 +1565,14 @@ public class Peripheral extends BluetoothGattCallback {
     }
 
     public void refreshCache(Callback callback) {
-        enqueue(() -> {
+        enqueue(INTERACTIVE_COMMAND, callback, () -> {
             try {
                 if (gatt == null) {
                     throw new Exception("gatt is null");
                 }
 
+                // the services are discovered again after a refresh
+                characteristicIndex = null;
                 Method localMethod = gatt.getClass().getMethod("refresh", new Class[0]);
                 boolean res = (Boolean) localMethod.invoke(gatt, new Object[0]);
                 callback.invoke(null, res);
@@ -1046,8 +1585,13 @@ public class Peripheral extends BluetoothGattCallback {
         });
     }
 
-    public void retrieveServices(Callback callback) {
-        enqueue(() -> {
+    /**
+     * @param services only return these services, null for all of them
+     * @param slim     leave out the permissions and descriptors of the characteristics
+     */
+    public void retrieveServices(@Nullable Set<UUID> services, boolean slim, Callback callback) {
+        ServicesRequest request = new ServicesRequest(services, slim, callback);
+        enqueue(INTERACTIVE_COMMAND, callback, () -> {
             if (!isConnected()) {
                 callback.invoke("Device is not connected", null);
                 completedCommand();
@@ -1056,11 +1600,18 @@ public class Peripheral extends BluetoothGattCallback {
                 callback.invoke("BluetoothGatt is null", null);
                 completedCommand();
                 return;
+            } else if (characteristicIndex != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+                // already discovered on this connection and not changed since, the GATT table is still valid.
+                // onServiceChanged only exists since API 31, older versions could miss a change so they rediscover
+                this.retrieveServicesRequests.addLast(request);
+                invokeRetrieveServicesCallbacks(gatt);
+                completedCommand();
             } else {
-                this.retrieveServicesCallbacks.addLast(callback);
+                this.retrieveServicesRequests.addLast(request);
+                expectAnswer(GattRequest.DISCOVER_SERVICES, null);
                 boolean started = gatt.discoverServices();
                 if (!started) {
-                    this.retrieveServicesCallbacks.removeLastOccurrence(callback);
+                    this.retrieveServicesRequests.removeLastOccurrence(request);
                     callback.invoke("Failed to start service discovery", null);
                     completedCommand();
                 }
@@ -1105,156 +1656,376 @@ public class Peripheral extends BluetoothGattCallback {
     }
 
     private void doWrite(final BluetoothGattCharacteristic characteristic, final byte[] data) {
+        doWrite(characteristic, data, 0);
+    }
+
+    private void doWrite(final BluetoothGattCharacteristic characteristic, final byte[] data, int attempt) {
+        int status = writeCharacteristic(characteristic, data);
+        if (status == BluetoothStatusCodes.SUCCESS) {
+            // the next chunk or the completion is driven by onCharacteristicWrite
+            return;
+        }
+        if (status == BluetoothStatusCodes.ERROR_GATT_WRITE_REQUEST_BUSY && attempt < WRITE_MAX_RETRIES) {
+            // the stack has no room for the packet yet, back off instead of failing the write
+            long delay = Math.min(WRITE_RETRY_BASE_DELAY_MS << attempt, WRITE_RETRY_MAX_DELAY_MS);
+            Log.d(BleManager.LOG_TAG, "Write busy, retrying in " + delay + "ms");
+            scheduleWrite(() -> doWrite(characteristic, data, attempt + 1), delay);
+            return;
+        }
+
+        writeQueue.clear();
+        for (Callback writeCallback : writeCallbacks) {
+            writeCallback.invoke("Write failed", null);
+        }
+        writeCallbacks.clear();
+        completedCommand();
+    }
+
+    private int writeCharacteristic(final BluetoothGattCharacteristic characteristic, final byte[] data) {
+        expectAnswer(GattRequest.WRITE, characteristic.getUuid());
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            return gatt.writeCharacteristic(characteristic, data, characteristic.getWriteType());
+        }
         characteristic.setValue(data);
-        if (!gatt.writeCharacteristic(characteristic)) {
-            // write without response, caller will handle the callback
-            for (Callback writeCallback : writeCallbacks) {
-                writeCallback.invoke("Write failed", null);
+        // before API 33 a refused write is almost always a busy stack
+        return gatt.writeCharacteristic(characteristic) ? BluetoothStatusCodes.SUCCESS
+                : BluetoothStatusCodes.ERROR_GATT_WRITE_REQUEST_BUSY;
+    }
+
+    private void scheduleWrite(Runnable write, long delay) {
+        pendingWrite = () -> {
+            pendingWrite = null;
+            if (!isConnected() || gatt == null) {
+                return;
             }
-            writeCallbacks.clear();
-            completedCommand();
+            write.run();
+        };
+        handler.postDelayed(pendingWrite, delay);
+    }
+
+    private void cancelPendingWrite() {
+        Runnable write = pendingWrite;
+        if (write != null) {
+            handler.removeCallbacks(write);
+            pendingWrite = null;
         }
     }
 
-    private boolean enqueueWrite(final BluetoothGattCharacteristic characteristic, byte[] data, final Callback callback) {
-        final byte[] copyOfData = copyOf(data);
-        final boolean withResponse = characteristic.getWriteType() == BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT;
-        if (withResponse && callback != null) {
+    /**
+     * @param maxByteSize chunk size, 0 or less to use the negotiated MTU
+     */
+    public void write(UUID serviceUUID, UUID characteristicUUID, byte[] data, Integer maxByteSize,
+                      Integer queueSleepTime, Callback callback, int writeType) {
+        write(serviceUUID, characteristicUUID, data, maxByteSize, queueSleepTime, callback, writeType,
+                INTERACTIVE_COMMAND);
+    }
+
+    /**
+     * @param maxByteSize chunk size, 0 or less to use the negotiated MTU
+     */
+    public void write(UUID serviceUUID, UUID characteristicUUID, byte[] data, Integer maxByteSize,
+                      Integer queueSleepTime, Callback callback, int writeType,
+                      PeripheralCommand.Options commandOptions) {
+        enqueue(commandOptions, callback, () -> {
+            if (!isConnected() || gatt == null) {
+                callback.invoke("Device is not connected", null);
+                completedCommand();
+                return;
+            }
+
+            BluetoothGattCharacteristic characteristic = lookupCharacteristic(serviceUUID, characteristicUUID,
+                    CharacteristicIndex.Lookup.forWriteType(writeType));
+
+            if (characteristic == null) {
+                callback.invoke("Characteristic " + characteristicUUID + " not found.");
+                completedCommand();
+                return;
+            }
+
+            characteristic.setWriteType(writeType);
+            int chunkSize = maxByteSize > 0 ? maxByteSize : getMaximumWriteValueLength(
+                    BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE);
+
+            byte[] firstMessage = Arrays.copyOfRange(data, 0, Math.min(chunkSize, data.length));
+            writeQueue.clear();
+            for (int offset = chunkSize; offset < data.length; offset += chunkSize) {
+                writeQueue.add(Arrays.copyOfRange(data, offset, Math.min(offset + chunkSize, data.length)));
+            }
+            writeChunkDelay = BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE == writeType
+                    && queueSleepTime != null ? queueSleepTime : 0;
+
+            // the first chunk is sent by this command so no other write can interleave with writeQueue,
+            // the following ones go out back to back from onCharacteristicWrite, which also completes the callback
             writeCallbacks.addLast(callback);
+            doWrite(characteristic, firstMessage);
+        });
+    }
+
+    public int getMtu() {
+        return mtu;
+    }
+
+    /**
+     * Largest value a single write of this type can carry. Longer with-response values are sent by the stack
+     * as a long (prepared) write.
+     */
+    public int getMaximumWriteValueLength(int writeType) {
+        if (writeType == BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE) {
+            return Math.min(mtu - ATT_WRITE_HEADER_SIZE, MAX_ATTRIBUTE_VALUE_LENGTH);
         }
-        return enqueue(() -> {
-            try {
-                if (!isConnected() || gatt == null) {
-                    if (withResponse && callback != null) {
-                        if (writeCallbacks.removeLastOccurrence(callback)) {
-                            try {
-                                callback.invoke("Device is not connected", null);
-                            } catch (Exception callbackException) {
-                                Log.e(BleManager.LOG_TAG, "Error invoking write callback for disconnected device", callbackException);
-                            }
-                        }
-                    }
-                    completedCommand();
-                    return;
-                }
-                doWrite(characteristic, copyOfData);
-            } catch (Exception e) {
-                Log.e(BleManager.LOG_TAG, "Error in enqueueWrite lambda", e);
-                if (withResponse && callback != null) {
-                    if (writeCallbacks.removeLastOccurrence(callback)) {
-                        try {
-                            callback.invoke("Write failed: " + e.getMessage(), null);
-                        } catch (Exception callbackException) {
-                            Log.e(BleManager.LOG_TAG, "Error invoking write callback", callbackException);
-                        }
-                    }
-                }
+        return MAX_ATTRIBUTE_VALUE_LENGTH;
+    }
+
+    private static class WriteStream {
+        final BluetoothGattCharacteristic characteristic;
+        final byte[] data;
+        final int chunkSize;
+        final long progressInterval;
+        final Callback callback;
+        final long startTime = SystemClock.elapsedRealtime();
+        int offset = 0;
+        long lastProgressTime = 0;
+        boolean finished = false;
+
+        WriteStream(BluetoothGattCharacteristic characteristic, byte[] data, int chunkSize, long progressInterval,
+                    Callback callback) {
+            this.characteristic = characteristic;
+            this.data = data;
+            this.chunkSize = chunkSize;
+            this.progressInterval = progressInterval;
+            this.callback = callback;
+        }
+
+        // the callback can be reached from the chunk write and from a disconnect, only the first one counts
+        void finish(Object... args) {
+            if (!finished) {
+                finished = true;
+                callback.invoke(args);
+            }
+        }
+
+        long bytesPerSecond(long now) {
+            long elapsed = Math.max(now - startTime, 1);
+            return offset * 1000L / elapsed;
+        }
+    }
+
+    /**
+     * Writes a large payload as a sequence of queued commands, one per chunk, so other commands of this
+     * peripheral can run between the chunks.
+     *
+     * @param chunkSize        bytes per chunk, 0 or less to use the negotiated MTU
+     * @param progressInterval minimum time (ms) between two onWriteStreamProgress events
+     */
+    public void writeStream(UUID serviceUUID, UUID characteristicUUID, byte[] data, int chunkSize, int writeType,
+                            long progressInterval, Callback callback) {
+        enqueue(BULK_COMMAND, callback, () -> {
+            if (!isConnected() || gatt == null) {
+                callback.invoke("Device is not connected", null);
+                completedCommand();
+                return;
+            }
+
+            BluetoothGattCharacteristic characteristic = lookupCharacteristic(serviceUUID, characteristicUUID,
+                    CharacteristicIndex.Lookup.forWriteType(writeType));
+            if (characteristic == null) {
+                callback.invoke("Characteristic " + characteristicUUID + " not found.", null);
                 completedCommand();
+                return;
             }
+            characteristic.setWriteType(writeType);
+
+            int size = chunkSize > 0 ? chunkSize
+                    : getMaximumWriteValueLength(BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE);
+            WriteStream stream = new WriteStream(characteristic, data, size, progressInterval, callback);
+            writeStreams.add(stream);
+            enqueueWriteStreamChunk(stream);
+            completedCommand();
         });
     }
 
-    public void write(UUID serviceUUID, UUID characteristicUUID, byte[] data, Integer maxByteSize,
-                      Integer queueSleepTime, Callback callback, int writeType) {
-        enqueue(() -> {
+    private void enqueueWriteStreamChunk(WriteStream stream) {
+        final int length = Math.min(stream.chunkSize, stream.data.length - stream.offset);
+        // bulk so interactive commands issued during the transfer overtake the remaining chunks
+        if (!enqueue(BULK_COMMAND, null, () -> {
             if (!isConnected() || gatt == null) {
-                callback.invoke("Device is not connected", null);
+                writeStreams.remove(stream);
+                stream.finish("Device is not connected", null);
                 completedCommand();
                 return;
             }
+            byte[] chunk = Arrays.copyOfRange(stream.data, stream.offset, stream.offset + length);
+            // completed by onCharacteristicWrite, or by doWrite when the stack refuses the chunk
+            writeCallbacks.addLast(args -> onWriteStreamChunk(stream, length, args));
+            doWrite(stream.characteristic, chunk);
+        })) {
+            writeStreams.remove(stream);
+            stream.finish("Write failed", null);
+        }
+    }
+
+    private void onWriteStreamChunk(WriteStream stream, int length, Object... args) {
+        if (args.length > 0 && args[0] != null) {
+            writeStreams.remove(stream);
+            stream.finish(args[0], null);
+            return;
+        }
+
+        stream.offset += length;
+        long now = SystemClock.elapsedRealtime();
+        boolean done = stream.offset >= stream.data.length;
+        if (done || now - stream.lastProgressTime >= stream.progressInterval) {
+            stream.lastProgressTime = now;
+            WritableMap progress = Arguments.createMap();
+            progress.putString("peripheral", device.getAddress());
+            progress.putString("characteristic", stream.characteristic.getUuid().toString());
+            progress.putString("service", stream.characteristic.getService().getUuid().toString());
+            progress.putDouble("bytesWritten", stream.offset);
+            progress.putDouble("totalBytes", stream.data.length);
+            progress.putDouble("bytesPerSecond", stream.bytesPerSecond(now));
+            bleManager.emitOnWriteStreamProgress(progress);
+        }
+
+        if (done) {
+            WritableMap result = Arguments.createMap();
+            result.putDouble("bytesWritten", stream.offset);
+            result.putDouble("duration", now - stream.startTime);
+            result.putDouble("bytesPerSecond", stream.bytesPerSecond(now));
+            writeStreams.remove(stream);
+            stream.finish(null, result);
+        } else {
+            // queued at the tail so commands issued meanwhile run before the next chunk
+            enqueueWriteStreamChunk(stream);
+        }
+    }
+
+    private static class ServicesRequest {
+        @Nullable
+        final Set<UUID> services;
+        final boolean slim;
+        final Callback callback;
+
+        ServicesRequest(@Nullable Set<UUID> services, boolean slim, Callback callback) {
+            this.services = services;
+            this.slim = slim;
+            this.callback = callback;
+        }
+    }
+
+    private static class ReliableWrite {
+        final BluetoothGattCharacteristic characteristic;
+        final Queue<byte[]> chunks;
+        final Callback callback;
 
-            BluetoothGattService service = gatt.getService(serviceUUID);
-            BluetoothGattCharacteristic characteristic = findWritableCharacteristic(service, characteristicUUID,
-                    writeType);
+        ReliableWrite(BluetoothGattCharacteristic characteristic, Queue<byte[]> chunks, Callback callback) {
+            this.characteristic = characteristic;
+            this.chunks = chunks;
+            this.callback = callback;
+        }
+    }
 
+    /**
+     * Writes a payload with prepared writes: every chunk is queued on the peripheral and the whole payload is
+     * committed at once by executeReliableWrite, or discarded if any chunk fails.
+     *
+     * @param maxByteSize chunk size, 0 or less to use the negotiated MTU
+     */
+    public void reliableWrite(UUID serviceUUID, UUID characteristicUUID, byte[] data, int maxByteSize,
+                              Callback callback, PeripheralCommand.Options commandOptions) {
+        enqueue(commandOptions, callback, () -> {
+            if (!isConnected() || gatt == null) {
+                callback.invoke("Device is not connected");
+                completedCommand();
+                return;
+            }
+
+            BluetoothGattCharacteristic characteristic = lookupCharacteristic(serviceUUID, characteristicUUID,
+                    CharacteristicIndex.Lookup.forWriteType(BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT));
             if (characteristic == null) {
                 callback.invoke("Characteristic " + characteristicUUID + " not found.");
                 completedCommand();
                 return;
             }
+            characteristic.setWriteType(BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
 
-            characteristic.setWriteType(writeType);
+            // a prepared write carries the value offset in its header, so it holds 2 bytes less than a write
+            int chunkSize = maxByteSize > 0 ? maxByteSize : mtu - ATT_WRITE_HEADER_SIZE - 2;
+            Queue<byte[]> chunks = new LinkedList<>();
+            for (int offset = 0; offset < data.length; offset += chunkSize) {
+                chunks.add(Arrays.copyOfRange(data, offset, Math.min(offset + chunkSize, data.length)));
+            }
 
-            if (data.length <= maxByteSize) {
-                if (!enqueueWrite(characteristic, data, callback)) {
-                    if (BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT == writeType) {
-                        writeCallbacks.removeLastOccurrence(callback);
-                    }
-                    callback.invoke("Write failed");
-                    completedCommand();
-                    return;
-                } else if (BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE == writeType) {
-                    callback.invoke();
-                }
-            } else {
-                int dataLength = data.length;
-                int count = 0;
-                byte[] firstMessage = null;
-                List<byte[]> splittedMessage = new ArrayList<>();
-
-                while (count < dataLength && (dataLength - count > maxByteSize)) {
-                    if (count == 0) {
-                        firstMessage = Arrays.copyOfRange(data, count, count + maxByteSize);
-                    } else {
-                        byte[] splitMessage = Arrays.copyOfRange(data, count, count + maxByteSize);
-                        splittedMessage.add(splitMessage);
-                    }
-                    count += maxByteSize;
-                }
-                if (count < dataLength) {
-                    // Other bytes in queue
-                    byte[] splitMessage = Arrays.copyOfRange(data, count, data.length);
-                    splittedMessage.add(splitMessage);
-                }
+            if (!gatt.beginReliableWrite()) {
+                callback.invoke("Could not begin reliable write");
+                completedCommand();
+                return;
+            }
+            reliableWrite = new ReliableWrite(characteristic, chunks, callback);
+            writeNextReliableChunk();
+        });
+    }
 
-                if (BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT == writeType) {
-                    writeQueue.addAll(splittedMessage);
-                    if (!enqueueWrite(characteristic, firstMessage, callback)) {
-                        writeQueue.clear();
-                        writeCallbacks.remove(callback);
-                        callback.invoke("Write failed");
-                        completedCommand();
-                        return;
-                    }
-                } else {
-                    try {
-                        boolean writeError = false;
-                        if (!enqueueWrite(characteristic, firstMessage, callback)) {
-                            writeError = true;
-                            callback.invoke("Write failed");
-                        }
-                        if (!writeError) {
-                            Thread.sleep(queueSleepTime);
-                            for (byte[] message : splittedMessage) {
-                                if (!enqueueWrite(characteristic, message, callback)) {
-                                    writeError = true;
-                                    callback.invoke("Write failed");
-                                    break;
-                                }
-                                Thread.sleep(queueSleepTime);
-                            }
-                            if (!writeError) {
-                                callback.invoke();
-                            }
-                        }
-                        if (writeError) {
-                            completedCommand();
-                            return;
-                        }
-                    } catch (InterruptedException e) {
-                        callback.invoke("Error during writing");
-                        completedCommand();
-                        return;
-                    }
-                }
+    private void writeNextReliableChunk() {
+        ReliableWrite write = reliableWrite;
+        byte[] chunk = write.chunks.poll();
+        if (chunk == null) {
+            // every chunk was prepared, commit them, completed in onReliableWriteCompleted
+            expectAnswer(GattRequest.EXECUTE_RELIABLE_WRITE, null);
+            if (!gatt.executeReliableWrite()) {
+                failReliableWrite("Could not execute reliable write");
             }
+            return;
+        }
+        if (writeCharacteristic(write.characteristic, chunk) != BluetoothStatusCodes.SUCCESS) {
+            failReliableWrite("Write failed");
+        }
+    }
+
+    private void onReliableWriteChunk(BluetoothGattCharacteristic characteristic, int status) {
+        if (status != BluetoothGatt.GATT_SUCCESS) {
+            failReliableWrite("Error writing " + characteristic.getUuid() + " status=" + status);
+            return;
+        }
+        restartCommandWatchdog();
+        writeNextReliableChunk();
+    }
+
+    private void failReliableWrite(String error) {
+        ReliableWrite write = reliableWrite;
+        reliableWrite = null;
+        try {
+            gatt.abortReliableWrite();
+        } catch (Exception e) {
+            Log.d(BleManager.LOG_TAG, "Error aborting reliable write", e);
+        }
+        write.callback.invoke(error);
+        completedCommand();
+    }
 
+    @Override
+    public void onReliableWriteCompleted(BluetoothGatt gatt, int status) {
+        super.onReliableWriteCompleted(gatt, status);
+        handler.post(() -> {
+            if (!takeAnswer(GattRequest.EXECUTE_RELIABLE_WRITE, null)) {
+                return;
+            }
+            ReliableWrite write = reliableWrite;
+            if (write == null) {
+                // completion of an aborted write
+                return;
+            }
+            reliableWrite = null;
+            if (status == BluetoothGatt.GATT_SUCCESS) {
+                write.callback.invoke();
+            } else {
+                write.callback.invoke("Error executing reliable write status=" + status);
+            }
             completedCommand();
         });
     }
 
     public void requestConnectionPriority(int connectionPriority, Callback callback) {
-        enqueue(() -> {
+        enqueue(CONTROL_COMMAND, callback, () -> {
             if (gatt != null) {
                 boolean status = gatt.requestConnectionPriority(connectionPriority);
                 callback.invoke(null, status);
@@ -1267,7 +2038,7 @@ public class Peripheral extends BluetoothGattCallback {
     }
 
     public void requestMTU(int mtu, Callback callback) {
-        enqueue(() -> {
+        enqueue(CONTROL_COMMAND, callback, () -> {
             if (!isConnected()) {
                 callback.invoke("Device is not connected", null);
                 completedCommand();
@@ -1281,6 +2052,7 @@ public class Peripheral extends BluetoothGattCallback {
             }
 
             requestMTUCallbacks.addLast(callback);
+            expectAnswer(GattRequest.REQUEST_MTU, null);
             if (!gatt.requestMtu(mtu)) {
                 for (Callback requestMTUCallback : requestMTUCallbacks) {
                     requestMTUCallback.invoke("Request MTU failed", null);
@@ -1291,10 +2063,25 @@ public class Peripheral extends BluetoothGattCallback {
         });
     }
 
+    @Override
+    public void onServiceChanged(BluetoothGatt gatt) {
+        super.onServiceChanged(gatt);
+        Log.d(BleManager.LOG_TAG, "onServiceChanged on peripheral: " + device.getAddress());
+        // the characteristic objects are stale until the services are discovered again
+        characteristicIndex = null;
+    }
+
     @Override
     public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
         super.onMtuChanged(gatt, mtu, status);
-        mainHandler.post(() -> {
+        if (status == BluetoothGatt.GATT_SUCCESS) {
+            this.mtu = mtu;
+        }
+        handler.post(() -> {
+            // the peripheral can also change the MTU on its own, only the requested change ends a command
+            if (!takeAnswer(GattRequest.REQUEST_MTU, null)) {
+                return;
+            }
             if (!requestMTUCallbacks.isEmpty()) {
                 if (status == BluetoothGatt.GATT_SUCCESS) {
                     for (Callback requestMTUCallback : requestMTUCallbacks) {
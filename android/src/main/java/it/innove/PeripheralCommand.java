@@ -0,0 +1,132 @@
+package it.innove;
+
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Callback;
+import com.facebook.react.bridge.ReadableMap;
+
+/**
+ * A GATT operation waiting in a peripheral's command queue.
+ * Commands run by priority class, in submission order within a class.
+ */
+public class PeripheralCommand implements Comparable<PeripheralCommand> {
+    public enum Priority {
+        // connection management, e.g. MTU and connection priority requests
+        CONTROL,
+        // regular operations issued from JS
+        INTERACTIVE,
+        // chunks of large transfers
+        BULK;
+
+        public static Priority fromString(@Nullable String value, Priority fallback) {
+            if ("control".equals(value)) {
+                return CONTROL;
+            } else if ("interactive".equals(value)) {
+                return INTERACTIVE;
+            } else if ("bulk".equals(value)) {
+                return BULK;
+            }
+            return fallback;
+        }
+    }
+
+    /**
+     * Queueing options of a command, as passed from JS.
+     */
+    public static class Options {
+        public static final long DEFAULT_COMMAND_TIMEOUT = -1;
+
+        public final Priority priority;
+        // time (ms) the command may wait in the queue, 0 to wait forever
+        public final long timeout;
+        // time (ms) the command may run before the watchdog fails it, DEFAULT_COMMAND_TIMEOUT for the global one
+        public final long commandTimeout;
+
+        public Options(Priority priority, long timeout, long commandTimeout) {
+            this.priority = priority;
+            this.timeout = timeout;
+            this.commandTimeout = commandTimeout;
+        }
+
+        public static Options of(Priority priority) {
+            return new Options(priority, 0, DEFAULT_COMMAND_TIMEOUT);
+        }
+
+        public static Options fromReadableMap(@Nullable ReadableMap options, Priority defaultPriority) {
+            if (options == null) {
+                return of(defaultPriority);
+            }
+            return new Options(
+                    Priority.fromString(options.hasKey("priority") ? options.getString("priority") : null,
+                            defaultPriority),
+                    options.hasKey("timeout") ? options.getInt("timeout") : 0,
+                    options.hasKey("commandTimeout") ? options.getInt("commandTimeout") : DEFAULT_COMMAND_TIMEOUT);
+        }
+    }
+
+    private final Runnable action;
+    private final Priority priority;
+    private final long sequence;
+    private final long enqueueTime = SystemClock.uptimeMillis();
+    private final long deadline;
+    private final long commandTimeout;
+    private final @Nullable Callback callback;
+
+    /**
+     * @param callback failed with an error if the command expires
+     */
+    public PeripheralCommand(Runnable action, Options options, long sequence, @Nullable Callback callback) {
+        this.action = action;
+        this.priority = options.priority;
+        this.sequence = sequence;
+        this.deadline = options.timeout > 0 ? enqueueTime + options.timeout : 0;
+        this.commandTimeout = options.commandTimeout;
+        this.callback = callback;
+    }
+
+    /**
+     * @return time (ms) the command may run, 0 for no limit
+     */
+    public long getCommandTimeout(long defaultTimeout) {
+        return commandTimeout == Options.DEFAULT_COMMAND_TIMEOUT ? defaultTimeout : commandTimeout;
+    }
+
+    public void run() {
+        action.run();
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    public long getWaitTime(long now) {
+        return now - enqueueTime;
+    }
+
+    public boolean isExpired(long now) {
+        return deadline > 0 && now > deadline;
+    }
+
+    public void expire() {
+        fail("Command expired before it could run");
+    }
+
+    /**
+     * Answers the caller of a command that will not run.
+     */
+    public void fail(String error) {
+        if (callback != null) {
+            callback.invoke(error);
+        }
+    }
+
+    @Override
+    public int compareTo(PeripheralCommand other) {
+        if (priority != other.priority) {
+            return priority.compareTo(other.priority);
+        }
+        return Long.compare(sequence, other.sequence);
+    }
+}
@@ -0,0 +1,218 @@
+package it.innove;
+
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Peripherals known to the module, keyed by MAC address.
+ * Lookups and saves do not lock, so scan callbacks and JS calls never wait on each other.
+ * When bounded, peripherals that are neither connected nor connecting are evicted least recently used
+ * first once maxSize is exceeded, and once they have not been seen for ttl ms.
+ */
+public class PeripheralRegistry {
+    // expired entries are looked for at most this often while saving peripherals
+    private static final long SWEEP_INTERVAL_MS = 1000;
+    // an eviction pass makes room for this share of maxSize, so it does not run on every save
+    private static final int EVICTION_HEADROOM_PERCENT = 10;
+
+    private static class Entry {
+        final Peripheral peripheral;
+        // insertion order, used to list the peripherals in the order they were found
+        final long sequence;
+        volatile long lastSeen;
+        volatile long lastAccess;
+
+        Entry(Peripheral peripheral, long sequence, long now) {
+            this.peripheral = peripheral;
+            this.sequence = sequence;
+            this.lastSeen = now;
+            this.lastAccess = now;
+        }
+    }
+
+    /**
+     * An eviction candidate with its lastAccess read once, lookups keep updating the entry during the sort.
+     */
+    private static class Candidate {
+        final String address;
+        final Entry entry;
+        final long lastAccess;
+
+        Candidate(String address, Entry entry) {
+            this.address = address;
+            this.entry = entry;
+            this.lastAccess = entry.lastAccess;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    // only one thread evicts at a time, the others keep going
+    private final AtomicBoolean evicting = new AtomicBoolean(false);
+    // 0 for no limit
+    private volatile int maxSize = 0;
+    private volatile long ttl = 0;
+    private volatile long lastSweep = 0;
+    // an over size pass that found only connected peripherals is not retried before this time
+    private volatile long evictionBackoffUntil = 0;
+
+    public void configure(int maxSize, long ttl) {
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        evictionBackoffUntil = 0;
+        evict(SystemClock.elapsedRealtime());
+    }
+
+    public Peripheral get(String address) {
+        Entry entry = entries.get(address);
+        if (entry == null) {
+            return null;
+        }
+        entry.lastAccess = SystemClock.elapsedRealtime();
+        return entry.peripheral;
+    }
+
+    /**
+     * Saves the peripheral and marks it as seen now.
+     */
+    public Peripheral put(String address, Peripheral peripheral) {
+        long now = SystemClock.elapsedRealtime();
+        entries.compute(address, (key, entry) -> {
+            if (entry != null && entry.peripheral == peripheral) {
+                entry.lastSeen = now;
+                entry.lastAccess = now;
+                return entry;
+            }
+            return new Entry(peripheral, sequence.incrementAndGet(), now);
+        });
+        evict(now);
+        return peripheral;
+    }
+
+    /**
+     * Atomically returns the registered peripheral, or registers the one created by the factory.
+     */
+    public Peripheral getOrCreate(String address, Function<String, Peripheral> factory) {
+        Peripheral peripheral = get(address);
+        if (peripheral != null) {
+            return peripheral;
+        }
+        long now = SystemClock.elapsedRealtime();
+        peripheral = entries.computeIfAbsent(address,
+                key -> new Entry(factory.apply(key), sequence.incrementAndGet(), now)).peripheral;
+        evict(now);
+        return peripheral;
+    }
+
+    public Peripheral remove(String address) {
+        Entry entry = entries.remove(address);
+        return entry != null ? entry.peripheral : null;
+    }
+
+    /**
+     * Removes the peripherals that are neither connected nor connecting.
+     */
+    public void removeDisconnected() {
+        entries.values().removeIf(entry -> isEvictable(entry.peripheral));
+    }
+
+    /**
+     * @return a snapshot of the registered peripherals, in the order they were registered
+     */
+    public List<Peripheral> values() {
+        if (ttl > 0) {
+            evict(SystemClock.elapsedRealtime());
+        }
+        List<Entry> snapshot = new ArrayList<>(entries.values());
+        snapshot.sort(Comparator.comparingLong(entry -> entry.sequence));
+        List<Peripheral> peripherals = new ArrayList<>(snapshot.size());
+        for (Entry entry : snapshot) {
+            peripherals.add(entry.peripheral);
+        }
+        return peripherals;
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    private void evict(long now) {
+        boolean sweepDue = ttl > 0 && now - lastSweep >= SWEEP_INTERVAL_MS;
+        boolean overSize = maxSize > 0 && entries.size() > maxSize && now >= evictionBackoffUntil;
+        if (!(sweepDue || overSize) || !evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            if (sweepDue) {
+                lastSweep = now;
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    if (now - entry.getValue().lastSeen > ttl) {
+                        evict(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+
+            int limit = maxSize;
+            if (overSize && entries.size() > limit) {
+                int target = limit - limit * EVICTION_HEADROOM_PERCENT / 100;
+                List<Candidate> candidates = new ArrayList<>();
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    if (isEvictable(entry.getValue().peripheral)) {
+                        candidates.add(new Candidate(entry.getKey(), entry.getValue()));
+                    }
+                }
+                if (candidates.isEmpty()) {
+                    // every peripheral is connected, wait for some to disconnect instead of scanning on every save
+                    evictionBackoffUntil = now + SWEEP_INTERVAL_MS;
+                    return;
+                }
+                candidates.sort(Comparator.comparingLong(candidate -> candidate.lastAccess));
+                for (Candidate candidate : candidates) {
+                    if (entries.size() <= target) {
+                        break;
+                    }
+                    evict(candidate.address, candidate.entry);
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private void evict(String address, Entry entry) {
+        if (!isEvictable(entry.peripheral) || !entries.remove(address, entry)) {
+            return;
+        }
+        if (isEvictable(entry.peripheral)) {
+            evictions.incrementAndGet();
+        } else {
+            // a connection started while the entry was being removed, keep it
+            entries.putIfAbsent(address, entry);
+        }
+    }
+
+    private static boolean isEvictable(Peripheral peripheral) {
+        return !(peripheral.isConnected() || peripheral.isConnecting());
+    }
+}
@@ -0,0 +1,183 @@
+package it.innove;
+
+import android.bluetooth.le.ScanRecord;
+import android.bluetooth.le.ScanResult;
+import android.os.ParcelUuid;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Rules checked natively against every scan result, after the hardware ScanFilters.
+ * Results that do not match are dropped before any JS payload is built for them.
+ */
+public class ScanResultFilter {
+    private final Integer minRssi;
+    private final String namePrefix;
+    private final Pattern namePattern;
+    private final ParcelUuid serviceDataUuid;
+    private final byte[] serviceDataPrefix;
+    private final byte[] serviceDataMask;
+    private final int[] manufacturerIds;
+    private final Set<String> allowedAddresses;
+    private final Set<String> deniedAddresses;
+
+    private ScanResultFilter(ReadableMap options) {
+        minRssi = options.hasKey("minRssi") ? options.getInt("minRssi") : null;
+        namePrefix = options.hasKey("namePrefix") ? options.getString("namePrefix") : null;
+        namePattern = options.hasKey("nameRegex")
+                ? Pattern.compile(Objects.requireNonNull(options.getString("nameRegex")))
+                : null;
+
+        ReadableMap serviceData = options.hasKey("serviceData") ? options.getMap("serviceData") : null;
+        if (serviceData != null) {
+            String uuidString = serviceData.hasKey("serviceUUID") ? serviceData.getString("serviceUUID") : null;
+            UUID uuid = UUIDHelper.tryParse(uuidString);
+            if (uuid == null) {
+                throw new IllegalArgumentException("Invalid UUID format in filter serviceData: " + uuidString);
+            }
+            serviceDataUuid = new ParcelUuid(uuid);
+            serviceDataPrefix = toBytes(serviceData.hasKey("serviceData") ? serviceData.getArray("serviceData") : null);
+            if (serviceData.hasKey("serviceDataMask")) {
+                serviceDataMask = toBytes(serviceData.getArray("serviceDataMask"));
+                if (serviceDataMask.length != serviceDataPrefix.length) {
+                    throw new IllegalArgumentException("Filter serviceData and serviceDataMask must have the same length");
+                }
+            } else {
+                serviceDataMask = null;
+            }
+        } else {
+            serviceDataUuid = null;
+            serviceDataPrefix = null;
+            serviceDataMask = null;
+        }
+
+        ReadableArray ids = options.hasKey("manufacturerIds") ? options.getArray("manufacturerIds") : null;
+        if (ids != null && ids.size() > 0) {
+            manufacturerIds = new int[ids.size()];
+            for (int i = 0; i < ids.size(); i++) {
+                manufacturerIds[i] = ids.getInt(i);
+            }
+        } else {
+            manufacturerIds = null;
+        }
+
+        allowedAddresses = toAddressSet(options.hasKey("allowAddresses") ? options.getArray("allowAddresses") : null);
+        deniedAddresses = toAddressSet(options.hasKey("denyAddresses") ? options.getArray("denyAddresses") : null);
+    }
+
+    /**
+     * @throws IllegalArgumentException if a rule is malformed
+     */
+    @Nullable
+    public static ScanResultFilter fromReadableMap(@Nullable ReadableMap options) {
+        if (options == null) {
+            return null;
+        }
+        return new ScanResultFilter(options);
+    }
+
+    public boolean matches(ScanResult result) {
+        // cheapest rules first
+        if (minRssi != null && result.getRssi() < minRssi) {
+            return false;
+        }
+
+        if (allowedAddresses != null || deniedAddresses != null) {
+            String address = result.getDevice().getAddress();
+            if (allowedAddresses != null && !allowedAddresses.contains(address)) {
+                return false;
+            }
+            if (deniedAddresses != null && deniedAddresses.contains(address)) {
+                return false;
+            }
+        }
+
+        if (namePrefix == null && namePattern == null && serviceDataUuid == null && manufacturerIds == null) {
+            return true;
+        }
+
+        ScanRecord record = result.getScanRecord();
+        if (record == null) {
+            return false;
+        }
+
+        if (namePrefix != null || namePattern != null) {
+            String name = record.getDeviceName();
+            if (name == null) {
+                return false;
+            }
+            if (namePrefix != null && !name.startsWith(namePrefix)) {
+                return false;
+            }
+            if (namePattern != null && !namePattern.matcher(name).find()) {
+                return false;
+            }
+        }
+
+        if (serviceDataUuid != null && !matchesServiceData(record.getServiceData(serviceDataUuid))) {
+            return false;
+        }
+
+        if (manufacturerIds != null) {
+            boolean found = false;
+            for (int id : manufacturerIds) {
+                if (record.getManufacturerSpecificData(id) != null) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean matchesServiceData(@Nullable byte[] data) {
+        if (data == null || data.length < serviceDataPrefix.length) {
+            return false;
+        }
+        for (int i = 0; i < serviceDataPrefix.length; i++) {
+            int mask = serviceDataMask != null ? serviceDataMask[i] : 0xFF;
+            if ((data[i] & mask) != (serviceDataPrefix[i] & mask)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] toBytes(@Nullable ReadableArray array) {
+        if (array == null) {
+            return new byte[0];
+        }
+        byte[] bytes = new byte[array.size()];
+        for (int i = 0; i < array.size(); i++) {
+            bytes[i] = Integer.valueOf(array.getInt(i)).byteValue();
+        }
+        return bytes;
+    }
+
+    @Nullable
+    private static Set<String> toAddressSet(@Nullable ReadableArray array) {
+        if (array == null || array.size() == 0) {
+            return null;
+        }
+        Set<String> addresses = new HashSet<>();
+        for (int i = 0; i < array.size(); i++) {
+            // Android reports addresses in upper case
+            addresses.add(Objects.requireNonNull(array.getString(i)).toUpperCase(Locale.ROOT));
+        }
+        return addresses;
+    }
+}
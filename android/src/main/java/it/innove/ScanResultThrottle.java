@@ -0,0 +1,88 @@
+package it.innove;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.ReadableMap;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Decides which scan results of a scan session are forwarded to JS, so repeated advertisements
+ * of the same device are dropped natively instead of crossing the bridge one by one.
+ */
+public class ScanResultThrottle {
+    // devices tracked at most, a forgotten device has its next result emitted
+    private static final int MAX_DEVICES = 1024;
+
+    private static class DeviceState {
+        long lastEmitTime;
+        int rssi;
+        int payloadHash;
+    }
+
+    // minimum time (ms) between two results of the same device
+    private final long minEmitInterval;
+    // only emit results whose payload or RSSI changed since the last emitted one
+    private final boolean emitOnChange;
+    // RSSI change (dBm) that counts as a change, 0 to ignore RSSI changes
+    private final int rssiThreshold;
+    // least recently seen first, bounded so a long scan in a crowded place does not grow it forever
+    private final Map<String, DeviceState> devices = new LinkedHashMap<String, DeviceState>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, DeviceState> eldest) {
+            return size() > MAX_DEVICES;
+        }
+    };
+
+    public ScanResultThrottle(long minEmitInterval, boolean emitOnChange, int rssiThreshold) {
+        this.minEmitInterval = minEmitInterval;
+        this.emitOnChange = emitOnChange;
+        this.rssiThreshold = rssiThreshold;
+    }
+
+    public static ScanResultThrottle fromReadableMap(ReadableMap options) {
+        return new ScanResultThrottle(
+                options.hasKey("minEmitInterval") ? (long) options.getDouble("minEmitInterval") : 0,
+                options.hasKey("emitOnChange") && options.getBoolean("emitOnChange"),
+                options.hasKey("rssiThreshold") ? options.getInt("rssiThreshold") : 0);
+    }
+
+    public boolean isEnabled() {
+        return minEmitInterval > 0 || emitOnChange;
+    }
+
+    public synchronized boolean shouldEmit(String address, int rssi, @Nullable byte[] payload, long now) {
+        if (!isEnabled()) {
+            return true;
+        }
+
+        int payloadHash = Arrays.hashCode(payload);
+        DeviceState state = devices.get(address);
+        if (state == null) {
+            state = new DeviceState();
+            devices.put(address, state);
+        } else {
+            if (minEmitInterval > 0 && now - state.lastEmitTime < minEmitInterval) {
+                return false;
+            }
+            if (emitOnChange) {
+                boolean changed = payloadHash != state.payloadHash
+                        || (rssiThreshold > 0 && Math.abs(rssi - state.rssi) >= rssiThreshold);
+                if (!changed) {
+                    return false;
+                }
+            }
+        }
+
+        state.lastEmitTime = now;
+        state.rssi = rssi;
+        state.payloadHash = payloadHash;
+        return true;
+    }
+
+    public synchronized void reset() {
+        devices.clear();
+    }
+}
@@ -0,0 +1,80 @@
+package it.innove;
+
+import android.bluetooth.le.ScanSettings;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps hardware scan starts within the platform quota and picks the scan mode of duty cycled scans.
+ * Since Android 7 an app that starts scanning more than 5 times in 30 seconds silently receives no results,
+ * so starts beyond the quota are delayed instead.
+ */
+public class ScanScheduler {
+    private static final int MAX_STARTS = 5;
+    private static final long START_WINDOW_MS = 30000;
+    // the platform measures the window on its own clock
+    private static final long START_MARGIN_MS = 250;
+
+    // start times of the last MAX_STARTS hardware scans, oldest at startIndex once full
+    private final long[] startTimes = new long[MAX_STARTS];
+    private int startIndex = 0;
+    private int startCount = 0;
+
+    // duty cycle intervals after which a device seen again counts as new
+    private static final int NOVELTY_INTERVALS = 3;
+
+    // last time each recently seen device was discovered, least recently seen first
+    private final Map<String, Long> seenDevices = new LinkedHashMap<>(16, 0.75f, true);
+    // time (ms) a device is remembered, older entries are forgotten
+    private long noveltyWindow = 0;
+    private int newDevices = 0;
+
+    /**
+     * @return time (ms) to wait before the next start stays within the quota, 0 to start now
+     */
+    public synchronized long getStartDelay(long now) {
+        if (startCount < MAX_STARTS) {
+            return 0;
+        }
+        return Math.max(0, startTimes[startIndex] + START_WINDOW_MS + START_MARGIN_MS - now);
+    }
+
+    public synchronized void recordStart(long now) {
+        startTimes[startIndex] = now;
+        startIndex = (startIndex + 1) % MAX_STARTS;
+        startCount = Math.min(startCount + 1, MAX_STARTS);
+    }
+
+    public synchronized void resetDiscoveries(long dutyCycleInterval) {
+        seenDevices.clear();
+        noveltyWindow = dutyCycleInterval * NOVELTY_INTERVALS;
+        newDevices = 0;
+    }
+
+    /**
+     * Counts the device as new if it was not seen in the last few duty cycle intervals.
+     */
+    public synchronized void onDeviceDiscovered(String address, long now) {
+        Long lastSeen = seenDevices.put(address, now);
+        if (lastSeen == null || now - lastSeen > noveltyWindow) {
+            newDevices++;
+        }
+    }
+
+    /**
+     * Scans the next window with low latency while new peripherals keep showing up, with low power once
+     * a window found nothing new.
+     */
+    public synchronized int nextScanMode(long now) {
+        // devices not seen for a while are forgotten, so the set only holds the recent ones
+        Iterator<Long> lastSeenTimes = seenDevices.values().iterator();
+        while (lastSeenTimes.hasNext() && now - lastSeenTimes.next() > noveltyWindow) {
+            lastSeenTimes.remove();
+        }
+        int scanMode = newDevices > 0 ? ScanSettings.SCAN_MODE_LOW_LATENCY : ScanSettings.SCAN_MODE_LOW_POWER;
+        newDevices = 0;
+        return scanMode;
+    }
+}
@@ -1,6 +1,8 @@
 package it.innove;
 
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -12,31 +14,51 @@ public class UUIDHelper {
 	// Validate BLE UUID format (16-bit or 128-bit)
 	// Returns true if the string is a valid BLE UUID format
 	public static boolean isValidBLEUUID(String uuidString) {
-		if (uuidString == null || uuidString.isEmpty()) {
-			return false;
-		}
+		return tryParse(uuidString) != null;
+	}
 
-		// Validate 16-bit UUID (4 hex characters)
-		if (uuidString.length() == 4) {
-			return uuidString.matches("[0-9A-Fa-f]{4}");
-		}
+	// apps talk to a handful of characteristics, the cache is simply reset if it ever grows past this
+	private static final int MAX_CACHED_UUIDS = 256;
+	private static final Map<String, UUID> parsedUUIDs = new ConcurrentHashMap<>();
 
-		// Validate 128-bit UUID (standard UUID format)
-		try {
-			UUID.fromString(uuidString);
-			return true;
-		} catch (IllegalArgumentException e) {
-			return false;
+	// handle 16 and 128 bit UUIDs
+	public static UUID uuidFromString(String uuid) {
+		UUID parsed = tryParse(uuid);
+		if (parsed == null) {
+			throw new IllegalArgumentException("Invalid UUID format: " + uuid);
 		}
+		return parsed;
 	}
 
-	// handle 16 and 128 bit UUIDs
-	public static UUID uuidFromString(String uuid) {
+	// parse a 16 or 128 bit UUID once, null if the string is not a valid BLE UUID
+	public static UUID tryParse(String uuid) {
+		if (uuid == null || uuid.isEmpty()) {
+			return null;
+		}
+		UUID parsed = parsedUUIDs.get(uuid);
+		if (parsed != null) {
+			return parsed;
+		}
 
+		String longUUID = uuid;
 		if (uuid.length() == 4) {
-			uuid = UUID_BASE.replace("XXXX", uuid);
+			for (int i = 0; i < 4; i++) {
+				if ("0123456789abcdefABCDEF".indexOf(uuid.charAt(i)) < 0) {
+					return null;
+				}
+			}
+			longUUID = UUID_BASE.replace("XXXX", uuid);
+		}
+		try {
+			parsed = UUID.fromString(longUUID);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+		if (parsedUUIDs.size() >= MAX_CACHED_UUIDS) {
+			parsedUUIDs.clear();
 		}
-		return UUID.fromString(uuid);
+		parsedUUIDs.put(uuid, parsed);
+		return parsed;
 	}
 
 	// return 16 bit UUIDs where possible
@@ -0,0 +1,139 @@
+package it.innove;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattService;
+import android.bluetooth.BluetoothProfile;
+import android.os.Handler;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.JavaOnlyMap;
+
+import org.junit.Test;
+import org.mockito.MockedStatic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+public class CommandWatchdogTest {
+    private static final UUID SERVICE = UUIDHelper.uuidFromString("180d");
+    private static final UUID CHARACTERISTIC = UUIDHelper.uuidFromString("2a39");
+    private static final long COMMAND_TIMEOUT = 100;
+    private static final int CHUNK_SIZE = 20;
+    private static final int CHUNKS = 5;
+    // time the peripheral takes to acknowledge each chunk
+    private static final long CHUNK_DELAY = 60;
+
+    /**
+     * Runs the work posted to the peripheral handler when the test moves its clock forward.
+     */
+    private static class FakeLooper {
+        private static class Scheduled {
+            final Runnable runnable;
+            final long time;
+
+            Scheduled(Runnable runnable, long time) {
+                this.runnable = runnable;
+                this.time = time;
+            }
+        }
+
+        private final List<Scheduled> scheduled = new ArrayList<>();
+        private long now = 0;
+
+        boolean schedule(Runnable runnable, long delay) {
+            scheduled.add(new Scheduled(runnable, now + delay));
+            return true;
+        }
+
+        void cancel(Runnable runnable) {
+            scheduled.removeIf(entry -> entry.runnable == runnable);
+        }
+
+        void advance(long time) {
+            long target = now + time;
+            while (true) {
+                Scheduled next = null;
+                for (Scheduled entry : scheduled) {
+                    if (entry.time <= target && (next == null || entry.time < next.time)) {
+                        next = entry;
+                    }
+                }
+                if (next == null) {
+                    break;
+                }
+                scheduled.remove(next);
+                now = next.time;
+                next.runnable.run();
+            }
+            now = target;
+        }
+
+        Handler handler() {
+            Handler handler = mock(Handler.class);
+            when(handler.post(any(Runnable.class)))
+                    .thenAnswer(invocation -> schedule(invocation.getArgument(0), 0));
+            when(handler.postDelayed(any(Runnable.class), anyLong()))
+                    .thenAnswer(invocation -> schedule(invocation.getArgument(0), invocation.getArgument(1)));
+            doAnswer(invocation -> {
+                cancel(invocation.getArgument(0));
+                return null;
+            }).when(handler).removeCallbacks(any(Runnable.class));
+            return handler;
+        }
+    }
+
+    @Test
+    public void chunkedWriteOutlastsTheCommandTimeoutWhileChunksAreAcknowledged() {
+        FakeLooper looper = new FakeLooper();
+        BleManager bleManager = mock(BleManager.class);
+        when(bleManager.getPeripheralHandler(any())).thenReturn(looper.handler());
+        when(bleManager.getCommandTimeout()).thenReturn(COMMAND_TIMEOUT);
+
+        BluetoothGattCharacteristic characteristic = mock(BluetoothGattCharacteristic.class);
+        when(characteristic.getUuid()).thenReturn(CHARACTERISTIC);
+        BluetoothGattService service = mock(BluetoothGattService.class);
+        when(service.getCharacteristic(CHARACTERISTIC)).thenReturn(characteristic);
+        BluetoothGatt gatt = mock(BluetoothGatt.class);
+        when(gatt.getService(SERVICE)).thenReturn(service);
+        when(gatt.writeCharacteristic(characteristic)).thenReturn(true);
+
+        Peripheral peripheral = new Peripheral(mock(BluetoothDevice.class), bleManager);
+        List<Object[]> answers = new ArrayList<>();
+
+        try (MockedStatic<Arguments> arguments = mockStatic(Arguments.class)) {
+            arguments.when(Arguments::createMap).thenAnswer(invocation -> new JavaOnlyMap());
+
+            peripheral.onConnectionStateChange(gatt, BluetoothGatt.GATT_SUCCESS, BluetoothProfile.STATE_CONNECTED);
+            looper.advance(0);
+
+            peripheral.write(SERVICE, CHARACTERISTIC, new byte[CHUNK_SIZE * CHUNKS], CHUNK_SIZE, 0,
+                    args -> answers.add(args), BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
+            looper.advance(0);
+
+            // the whole transfer takes CHUNKS * CHUNK_DELAY, well over the command timeout
+            for (int i = 0; i < CHUNKS; i++) {
+                looper.advance(CHUNK_DELAY);
+                peripheral.onCharacteristicWrite(gatt, characteristic, BluetoothGatt.GATT_SUCCESS);
+                looper.advance(0);
+            }
+        }
+
+        verify(gatt, times(CHUNKS)).writeCharacteristic(characteristic);
+        assertEquals(1, answers.size());
+        // a successful write is answered without an error
+        assertEquals(0, answers.get(0).length);
+    }
+}
@@ -0,0 +1,60 @@
+package it.innove;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.when;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.os.Handler;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.JavaOnlyArray;
+import com.facebook.react.bridge.JavaOnlyMap;
+
+import org.junit.Test;
+import org.mockito.MockedStatic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+public class FanOutWriteTest {
+    private static final UUID SERVICE = UUIDHelper.uuidFromString("180d");
+    private static final UUID CHARACTERISTIC = UUIDHelper.uuidFromString("2a39");
+
+    @Test
+    public void disconnectFailsTheQueuedWriteOfItsTarget() {
+        BleManager bleManager = mock(BleManager.class);
+        // the handler never runs anything, so the first command keeps the queue busy
+        when(bleManager.getPeripheralHandler(any())).thenReturn(mock(Handler.class));
+        Peripheral peripheral = new Peripheral(mock(BluetoothDevice.class), bleManager);
+
+        List<Object[]> answers = new ArrayList<>();
+        FanOutWrite fanOut = new FanOutWrite(new String[]{"AA:AA:AA:AA:AA:AA", "BB:BB:BB:BB:BB:BB"},
+                args -> answers.add(args));
+
+        try (MockedStatic<Arguments> arguments = mockStatic(Arguments.class)) {
+            arguments.when(Arguments::createMap).thenAnswer(invocation -> new JavaOnlyMap());
+            arguments.when(Arguments::createArray).thenAnswer(invocation -> new JavaOnlyArray());
+
+            fanOut.callbackFor(0).invoke();
+            peripheral.readRSSI(args -> {
+            });
+            peripheral.write(SERVICE, CHARACTERISTIC, new byte[]{1}, 20, 0, fanOut.callbackFor(1),
+                    BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
+            assertTrue(answers.isEmpty());
+
+            peripheral.resetQueuesAndBuffers();
+
+            assertEquals(1, answers.size());
+            JavaOnlyMap result = (JavaOnlyMap) answers.get(0)[1];
+            assertEquals(1, result.getInt("succeeded"));
+            assertEquals(1, result.getInt("failed"));
+            assertEquals("Device disconnected", result.getArray("results").getMap(1).getString("error"));
+        }
+    }
+}
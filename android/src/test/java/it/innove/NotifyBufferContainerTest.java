@@ -0,0 +1,63 @@
+package it.innove;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class NotifyBufferContainerTest {
+    private static final int CHUNK_SIZE = 4;
+
+    /**
+     * A notification carrying the stream positions [start, start + length), so every byte tells where it was
+     * in the notified stream.
+     */
+    private static byte[] notification(int start, int length) {
+        byte[] value = new byte[length];
+        for (int i = 0; i < length; i++) {
+            value[i] = (byte) (start + i);
+        }
+        return value;
+    }
+
+    @Test
+    public void dropOldestEvictsWholeNotifications() {
+        NotifyBufferContainer buffer = new NotifyBufferContainer(CHUNK_SIZE,
+                NotifyBufferContainer.OverflowPolicy.DROP_OLDEST);
+        // one notification more than the ring holds
+        for (int i = 0; i < 5; i++) {
+            buffer.put(notification(i * CHUNK_SIZE, CHUNK_SIZE));
+        }
+
+        for (int i = 1; i < 5; i++) {
+            assertArrayEquals(notification(i * CHUNK_SIZE, CHUNK_SIZE), buffer.poll());
+        }
+        assertNull(buffer.poll());
+        assertEquals(CHUNK_SIZE, buffer.getDroppedBytes());
+    }
+
+    @Test
+    public void dropOldestKeepsChunksAlignedAcrossOverflows() {
+        NotifyBufferContainer buffer = new NotifyBufferContainer(CHUNK_SIZE,
+                NotifyBufferContainer.OverflowPolicy.DROP_OLDEST);
+        // lengths that do not line up with the chunks, including one longer than the whole ring
+        int[] lengths = {3, 6, 5, 2, 7, 21, 1, 9};
+        int position = 0;
+        for (int length : lengths) {
+            buffer.put(notification(position, length));
+            position += length;
+        }
+
+        int polled = 0;
+        byte[] chunk;
+        while ((chunk = buffer.poll()) != null) {
+            // every chunk starts on a chunk boundary of the notified stream and is contiguous
+            assertEquals(0, (chunk[0] & 0xff) % CHUNK_SIZE);
+            assertArrayEquals(notification(chunk[0] & 0xff, CHUNK_SIZE), chunk);
+            polled++;
+        }
+        assertEquals(0, buffer.getDroppedBytes() % CHUNK_SIZE);
+        assertEquals(position / CHUNK_SIZE, polled + buffer.getDroppedBytes() / CHUNK_SIZE);
+    }
+}
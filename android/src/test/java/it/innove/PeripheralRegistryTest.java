@@ -0,0 +1,75 @@
+package it.innove;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class PeripheralRegistryTest {
+    private static final int MAX_SIZE = 50;
+    private static final int DEVICES = 500;
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 20000;
+
+    @Test
+    public void scanInsertsAndLookupsRunConcurrently() throws Exception {
+        PeripheralRegistry registry = new PeripheralRegistry();
+        registry.configure(MAX_SIZE, 0);
+        Peripheral connected = mock(Peripheral.class);
+        when(connected.isConnected()).thenReturn(true);
+        registry.put("connected", connected);
+        Peripheral[] scanned = new Peripheral[DEVICES];
+        for (int i = 0; i < DEVICES; i++) {
+            scanned[i] = mock(Peripheral.class);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            // half the threads save scan results, the others look peripherals up as JS calls do
+            boolean scanner = t % 2 == 0;
+            workers.add(executor.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    int device = random.nextInt(DEVICES);
+                    String address = "device-" + device;
+                    if (scanner) {
+                        registry.put(address, scanned[device]);
+                    } else if (i % 100 == 0) {
+                        assertFalse(registry.values().isEmpty());
+                    } else {
+                        registry.get(address);
+                        registry.get("connected");
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        try {
+            for (Future<?> worker : workers) {
+                // rethrows what a worker threw, e.g. a sort contract violation
+                worker.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertSame(connected, registry.get("connected"));
+        registry.put("device-0", scanned[0]);
+        assertTrue(registry.size() <= MAX_SIZE);
+    }
+}
@@ -8,9 +8,13 @@
 
 @interface BleManager : NativeBleManagerSpecBase <NativeBleManagerSpec>
 - (void)emitOnDiscoverPeripheral:(NSDictionary *)value;
+- (void)emitOnDiscoverPeripherals:(NSDictionary *)value;
 - (void)emitOnStopScan:(NSDictionary *)value;
+- (void)emitOnScanBackoff:(NSDictionary *)value;
 - (void)emitOnDidUpdateState:(NSDictionary *)value;
 - (void)emitOnDidUpdateValueForCharacteristic:(NSDictionary *)value;
+- (void)emitOnDidUpdateValuesForCharacteristic:(NSDictionary *)value;
+- (void)emitOnWriteStreamProgress:(NSDictionary *)value;
 - (void)emitOnConnectPeripheral:(NSDictionary *)value;
 - (void)emitOnDisconnectPeripheral:(NSDictionary *)value;
 - (void)emitOnPeripheralDidBond:(NSDictionary *)value;
@@ -26,9 +30,13 @@
 
 @interface BleManager : NSObject
 - (void)emitOnDiscoverPeripheral:(NSDictionary *)value;
+- (void)emitOnDiscoverPeripherals:(NSDictionary *)value;
 - (void)emitOnStopScan:(NSDictionary *)value;
+- (void)emitOnScanBackoff:(NSDictionary *)value;
 - (void)emitOnDidUpdateState:(NSDictionary *)value;
 - (void)emitOnDidUpdateValueForCharacteristic:(NSDictionary *)value;
+- (void)emitOnDidUpdateValuesForCharacteristic:(NSDictionary *)value;
+- (void)emitOnWriteStreamProgress:(NSDictionary *)value;
 - (void)emitOnConnectPeripheral:(NSDictionary *)value;
 - (void)emitOnDisconnectPeripheral:(NSDictionary *)value;
 - (void)emitOnPeripheralDidBond:(NSDictionary *)value;
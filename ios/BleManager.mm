@@ -111,6 +111,39 @@ RCT_EXPORT_MODULE()
     [_swBleManager isPeripheralConnected:peripheralUUID callback:callback];
 }
 
+- (void)writeStream:(NSString *)peripheralUUID
+        serviceUUID:(NSString *)serviceUUID
+ characteristicUUID:(NSString *)characteristicUUID
+             source:(NSString *)source
+            options:(NSDictionary *)options
+           callback:(RCTResponseSenderBlock)callback {
+    [_swBleManager writeStream:peripheralUUID
+                   serviceUUID:serviceUUID
+            characteristicUUID:characteristicUUID
+                        source:source
+                       options:options
+                      callback:callback];
+}
+
+- (void)transaction:(NSString *)peripheralUUID
+         operations:(NSArray *)operations
+            options:(NSDictionary *)options
+           callback:(RCTResponseSenderBlock)callback {
+    [_swBleManager transaction:peripheralUUID
+                    operations:operations
+                       options:options
+                      callback:callback];
+}
+
+- (void)getPeripheralStatistics:(NSString *)peripheralUUID
+                       callback:(RCTResponseSenderBlock)callback {
+    [_swBleManager getPeripheralStatistics:peripheralUUID callback:callback];
+}
+
+- (void)getRegistryStatistics:(RCTResponseSenderBlock)callback {
+    [_swBleManager getRegistryStatistics:callback];
+}
+
 - (void)isScanning:(RCTResponseSenderBlock)callback {
     [_swBleManager isScanning:callback];
 }
@@ -125,6 +158,14 @@ RCT_EXPORT_MODULE()
                   callback:callback];
 }
 
+- (void)readMany:(NSString *)peripheralUUID
+ characteristics:(NSArray *)characteristics
+        callback:(RCTResponseSenderBlock)callback {
+    [_swBleManager readMany:peripheralUUID
+            characteristics:characteristics
+                   callback:callback];
+}
+
 - (void)readDescriptor:(NSString *)peripheralUUID
            serviceUUID:(NSString *)serviceUUID
     characteristicUUID:(NSString *)characteristicUUID
@@ -184,6 +225,16 @@ RCT_EXPORT_MODULE()
                            callback:callback];
 }
 
+- (void)retrieveServicesWithOptions:(NSString *)peripheralUUID
+                           services:(NSArray *)services
+                            options:(NSDictionary *)options
+                           callback:(RCTResponseSenderBlock)callback {
+    // CoreBluetooth has no slim shape, descriptors are only discovered on demand
+    [_swBleManager retrieveServices:peripheralUUID
+                           services:services
+                           callback:callback];
+}
+
 - (void)scan:(NSDictionary *)scanningOptions
     callback:(RCTResponseSenderBlock)callback {
     [_swBleManager scan:scanningOptions callback:callback];
@@ -224,6 +275,18 @@ RCT_EXPORT_MODULE()
                             callback:callback];
 }
 
+- (void)startNotificationWithOptions:(NSString *)peripheralUUID
+                        serviceUUID:(NSString *)serviceUUID
+                 characteristicUUID:(NSString *)characteristicUUID
+                            options:(NSDictionary *)options
+                           callback:(RCTResponseSenderBlock)callback {
+    [_swBleManager startNotificationWithOptions:peripheralUUID
+                                    serviceUUID:serviceUUID
+                             characteristicUUID:characteristicUUID
+                                        options:options
+                                       callback:callback];
+}
+
 - (void)stopNotification:(NSString *)peripheralUUID
              serviceUUID:(NSString *)serviceUUID
       characteristicUUID:(NSString *)characteristicUUID
@@ -256,6 +319,36 @@ RCT_EXPORT_MODULE()
                   callback:callback];
 }
 
+- (void)writeWithOptions:(NSString *)peripheralUUID
+             serviceUUID:(NSString *)serviceUUID
+      characteristicUUID:(NSString *)characteristicUUID
+                 message:(NSArray *)message
+             maxByteSize:(double)maxByteSize
+                 options:(NSDictionary *)options
+                callback:(RCTResponseSenderBlock)callback {
+    // CoreBluetooth sends values longer than the MTU as a long (prepared) write already
+    [_swBleManager write:peripheralUUID
+               serviceUUID:serviceUUID
+        characteristicUUID:characteristicUUID
+                   message:message
+               maxByteSize:maxByteSize
+                  callback:callback];
+}
+
+- (void)writeMany:(NSArray *)peripheralUUIDs
+      serviceUUID:(NSString *)serviceUUID
+characteristicUUID:(NSString *)characteristicUUID
+          message:(NSArray *)message
+          options:(NSDictionary *)options
+         callback:(RCTResponseSenderBlock)callback {
+    [_swBleManager writeMany:peripheralUUIDs
+                 serviceUUID:serviceUUID
+          characteristicUUID:characteristicUUID
+                     message:message
+                     options:options
+                    callback:callback];
+}
+
 - (void)writeDescriptor:(NSString *)peripheralUUID
             serviceUUID:(NSString *)serviceUUID
      characteristicUUID:(NSString *)characteristicUUID
@@ -818,6 +818,58 @@ public class SwiftBleManager: NSObject, CBCentralManagerDelegate,
         }
     }
 
+    @objc public func writeStream(
+        _ peripheralUUID: String,
+        serviceUUID: String,
+        characteristicUUID: String,
+        source: String,
+        options: NSDictionary,
+        callback: @escaping RCTResponseSenderBlock
+    ) {
+        callback(["Not supported"])
+    }
+
+    @objc public func writeMany(
+        _ peripheralUUIDs: [String],
+        serviceUUID: String,
+        characteristicUUID: String,
+        message: [UInt8],
+        options: NSDictionary,
+        callback: @escaping RCTResponseSenderBlock
+    ) {
+        // the JS module dispatches the writes concurrently on iOS
+        callback(["Not supported"])
+    }
+
+    @objc public func transaction(
+        _ peripheralUUID: String,
+        operations: [NSDictionary],
+        options: NSDictionary,
+        callback: @escaping RCTResponseSenderBlock
+    ) {
+        callback(["Not supported"])
+    }
+
+    @objc public func getPeripheralStatistics(
+        _ peripheralUUID: String,
+        callback: @escaping RCTResponseSenderBlock
+    ) {
+        callback(["Not supported"])
+    }
+
+    @objc public func getRegistryStatistics(_ callback: @escaping RCTResponseSenderBlock) {
+        callback(["Not supported"])
+    }
+
+    @objc public func readMany(
+        _ peripheralUUID: String,
+        characteristics: [NSDictionary],
+        callback: @escaping RCTResponseSenderBlock
+    ) {
+        // the JS module runs the reads one by one on iOS
+        callback(["Not supported"])
+    }
+
     @objc public func isScanning(_ callback: @escaping RCTResponseSenderBlock) {
         if let manager = manager {
             callback([NSNull(), manager.isScanning])
@@ -878,6 +930,12 @@ public class SwiftBleManager: NSObject, CBCentralManagerDelegate,
                 )
             }
 
+            // 0 means the largest value the connection accepts
+            let maxByteSize =
+                maxByteSize > 0
+                ? maxByteSize
+                : peripheral.instance.maximumWriteValueLength(for: .withResponse)
+
             if dataMessage.count > maxByteSize {
                 var count = 0
                 var offset = 0
@@ -960,6 +1018,13 @@ public class SwiftBleManager: NSObject, CBCentralManagerDelegate,
             )
         }
 
+        // 0 means the largest value the connection accepts
+        let maxByteSize =
+            maxByteSize > 0
+            ? maxByteSize
+            : (context.peripheral?.instance.maximumWriteValueLength(
+                for: .withoutResponse) ?? 20)
+
         if dataMessage.count > maxByteSize {
             var offset = 0
             let peripheral = context.peripheral
@@ -1102,6 +1167,36 @@ public class SwiftBleManager: NSObject, CBCentralManagerDelegate,
         peripheral.instance.setNotifyValue(true, for: characteristic)
     }
 
+    @objc public func startNotificationWithOptions(
+        _ peripheralUUID: String,
+        serviceUUID: String,
+        characteristicUUID: String,
+        options: NSDictionary,
+        callback: @escaping RCTResponseSenderBlock
+    ) {
+        NSLog("startNotificationWithOptions")
+
+        // valueFormat is Android only, buffering maps to the existing buffered notification
+        if let bufferLength = options["bufferLength"] as? NSNumber,
+            bufferLength.intValue > 1
+        {
+            startNotificationWithBuffer(
+                peripheralUUID,
+                serviceUUID: serviceUUID,
+                characteristicUUID: characteristicUUID,
+                bufferLength: bufferLength,
+                callback: callback
+            )
+        } else {
+            startNotification(
+                peripheralUUID,
+                serviceUUID: serviceUUID,
+                characteristicUUID: characteristicUUID,
+                callback: callback
+            )
+        }
+    }
+
     @objc public func stopNotification(
         _ peripheralUUID: String,
         serviceUUID: String,
@@ -37,6 +37,13 @@ export interface Spec extends TurboModule {
     callback: (error: CallbackError, peripheral: PeripheralInfo) => void
   ): void;
 
+  retrieveServicesWithOptions(
+    peripheralUUID: string,
+    services: string[],
+    options: Object,
+    callback: (error: CallbackError, peripheral: PeripheralInfo) => void
+  ): void;
+
   readRSSI(
     peripheralUUID: string,
     callback: (error: CallbackError, rssi: number) => void
@@ -74,6 +81,25 @@ export interface Spec extends TurboModule {
     callback: (error: CallbackError) => void
   ): void;
 
+  writeWithOptions(
+    peripheralUUID: string,
+    serviceUUID: string,
+    characteristicUUID: string,
+    message: Object[],
+    maxByteSize: number,
+    options: Object,
+    callback: (error: CallbackError) => void
+  ): void;
+
+  writeMany(
+    peripheralUUIDs: string[],
+    serviceUUID: string,
+    characteristicUUID: string,
+    message: Object[],
+    options: Object,
+    callback: (error: CallbackError, result: Object | null) => void
+  ): void;
+
   writeWithoutResponse(
     peripheralUUID: string,
     serviceUUID: string,
@@ -91,6 +117,12 @@ export interface Spec extends TurboModule {
     callback: (error: CallbackError, data: number[]) => void
   ): void;
 
+  readMany(
+    peripheralUUID: string,
+    characteristics: Object[],
+    callback: (error: CallbackError, results: Object[] | null) => void
+  ): void;
+
   startNotificationWithBuffer(
     peripheralUUID: string,
     serviceUUID: string,
@@ -106,6 +138,14 @@ export interface Spec extends TurboModule {
     callback: (error: CallbackError) => void
   ): void;
 
+  startNotificationWithOptions(
+    peripheralUUID: string,
+    serviceUUID: string,
+    characteristicUUID: string,
+    options: Object,
+    callback: (error: CallbackError) => void
+  ): void;
+
   stopNotification(
     peripheralUUID: string,
     serviceUUID: string,
@@ -125,6 +165,31 @@ export interface Spec extends TurboModule {
 
   isScanning(callback: (error: CallbackError, status: boolean) => void): void;
 
+  writeStream(
+    peripheralUUID: string,
+    serviceUUID: string,
+    characteristicUUID: string,
+    source: string,
+    options: Object,
+    callback: (error: CallbackError, result: Object | null) => void
+  ): void;
+
+  transaction(
+    peripheralUUID: string,
+    operations: Object[],
+    options: Object,
+    callback: (error: CallbackError, results: Object[] | null) => void
+  ): void;
+
+  getPeripheralStatistics(
+    peripheralUUID: string,
+    callback: (error: CallbackError, statistics: Object | null) => void
+  ): void;
+
+  getRegistryStatistics(
+    callback: (error: CallbackError, statistics: Object | null) => void
+  ): void;
+
   getMaximumWriteValueLengthForWithoutResponse(
     peripheralUUID: string,
     callback: (error: CallbackError, max: number) => void
@@ -197,9 +262,13 @@ export interface Spec extends TurboModule {
    * Supported events.
    */
   readonly onDiscoverPeripheral: EventEmitter<Peripheral>;
+  readonly onDiscoverPeripherals: EventEmitter<EventDiscoverPeripherals>;
   readonly onStopScan: EventEmitter<EventStopScan>;
+  readonly onScanBackoff: EventEmitter<EventScanBackoff>;
   readonly onDidUpdateState: EventEmitter<EventDidUpdateState>;
   readonly onDidUpdateValueForCharacteristic: EventEmitter<EventDidUpdateValueForCharacteristic>;
+  readonly onDidUpdateValuesForCharacteristic: EventEmitter<EventDidUpdateValuesForCharacteristic>;
+  readonly onWriteStreamProgress: EventEmitter<EventWriteStreamProgress>;
   readonly onConnectPeripheral: EventEmitter<EventConnectPeripheral>;
   readonly onDisconnectPeripheral: EventEmitter<EventDisconnectPeripheral>;
   readonly onPeripheralDidBond: EventEmitter<EventPeripheralDidBond>;
@@ -287,6 +356,8 @@ export type PeripheralInfo = {
 
 export type EventStopScan = { status: number };
 
+export type EventScanBackoff = { delay: number };
+
 export type EventDidUpdateState = { state: string };
 
 export type EventDiscoverPeripheral = {
@@ -303,8 +374,48 @@ export type EventDiscoverPeripheral = {
   };
 };
 
+export type EventDiscoverPeripherals = {
+  peripherals: {
+    id: string;
+    name: string;
+    rssi: number;
+    count: number;
+    advertising: {
+      isConnectable: boolean;
+      serviceUUIDs: string[];
+      manufacturerData: number[];
+      serviceData: number[];
+      txPowerLevel: number;
+      rawData?: number | null;
+    };
+  }[];
+};
+
 export type EventDidUpdateValueForCharacteristic = {
   value: number[];
+  data?: string | null;
+  peripheral: string;
+  characteristic: string;
+  service: string;
+};
+
+export type NotifiedValue = {
+  value: number[];
+  data?: string | null;
+  timestamp: number;
+};
+
+export type EventWriteStreamProgress = {
+  peripheral: string;
+  characteristic: string;
+  service: string;
+  bytesWritten: number;
+  totalBytes: number;
+  bytesPerSecond: number;
+};
+
+export type EventDidUpdateValuesForCharacteristic = {
+  values: NotifiedValue[];
   peripheral: string;
   characteristic: string;
   service: string;
@@ -1,4 +1,4 @@
-import { EventSubscription, NativeModules } from 'react-native';
+import { EventSubscription, NativeModules, Platform } from 'react-native';
 import {
   BleScanCallbackType,
   BleScanMatchCount,
@@ -10,15 +10,33 @@ import {
   CompanionScanOptions,
   Peripheral,
   PeripheralInfo,
+  PeripheralStatistics,
+  ReadManyItem,
+  ReadManyResult,
+  RegistryStatistics,
   ScanOptions,
+  StartNotificationOptions,
   StartOptions,
+  TransactionOperation,
+  TransactionOptions,
+  TransactionResult,
+  RetrieveServicesOptions,
+  WriteManyOptions,
+  WriteManyResult,
+  WriteOptions,
+  WriteStreamOptions,
+  WriteStreamResult,
   EventCallback,
   BleConnectPeripheralEvent,
   BleDiscoverPeripheralEvent,
+  BleDiscoverPeripheralsEvent,
   BleStopScanEvent,
+  BleScanBackoffEvent,
   BleManagerDidUpdateStateEvent,
   BleDisconnectPeripheralEvent,
   BleManagerDidUpdateValueForCharacteristicEvent,
+  BleManagerDidUpdateValuesForCharacteristicEvent,
+  BleWriteStreamProgressEvent,
   BleBondedPeripheralEvent,
   BleManagerCentralManagerWillRestoreState,
   BleManagerDidUpdateNotificationStateForEvent,
@@ -67,6 +85,43 @@ class BleManager {
     });
   }
 
+  /**
+   * Read several characteristics in one call, you need to call `retrieveServices` method before.
+   * On Android the reads run back-to-back as a single command of the peripheral queue.
+   * A characteristic that cannot be read gets an `error` in its result instead of rejecting the whole call.
+   *
+   * @param peripheralId The id/mac address of the peripheral.
+   * @param characteristics The service and characteristic UUIDs to read.
+   * @returns One result per characteristic, in the requested order.
+   */
+  async readMany(peripheralId: string, characteristics: ReadManyItem[]) {
+    if (Platform.OS !== 'android') {
+      const results: ReadManyResult[] = [];
+      for (const { service, characteristic } of characteristics) {
+        try {
+          const value = await this.read(peripheralId, service, characteristic);
+          results.push({ service, characteristic, value });
+        } catch (error) {
+          results.push({ service, characteristic, error: String(error) });
+        }
+      }
+      return results;
+    }
+    return new Promise<ReadManyResult[]>((fulfill, reject) => {
+      BleManagerModule.readMany(
+        peripheralId,
+        characteristics,
+        (error: string | null, results: ReadManyResult[] | null) => {
+          if (error) {
+            reject(error);
+          } else {
+            fulfill(results as ReadManyResult[]);
+          }
+        }
+      );
+    });
+  }
+
   /**
    * Read the current value of the specified descriptor, you need to call `retrieveServices` method before.
    * 
@@ -182,22 +237,33 @@ class BleManager {
    * Retrieve the peripheral's services and characteristics.
    * 
    * @param peripheralId The id/mac address of the peripheral.
-   * @param serviceUUIDs [iOS only] Optional filter of services to retrieve.
+   * @param serviceUUIDs Optional filter of services to retrieve.
+   * @param options Optional, see `RetrieveServicesOptions`.
    * @returns
    */
-  retrieveServices(peripheralId: string, serviceUUIDs: string[] = []) {
+  retrieveServices(
+    peripheralId: string,
+    serviceUUIDs: string[] = [],
+    options?: RetrieveServicesOptions
+  ) {
     return new Promise<PeripheralInfo>((fulfill, reject) => {
-      BleManagerModule.retrieveServices(
-        peripheralId,
-        serviceUUIDs,
-        (error: string | null, peripheral: PeripheralInfo) => {
-          if (error) {
-            reject(error);
-          } else {
-            fulfill(peripheral);
-          }
+      const callback = (error: string | null, peripheral: PeripheralInfo) => {
+        if (error) {
+          reject(error);
+        } else {
+          fulfill(peripheral);
         }
-      );
+      };
+      if (options) {
+        BleManagerModule.retrieveServicesWithOptions(
+          peripheralId,
+          serviceUUIDs,
+          options,
+          callback
+        );
+      } else {
+        BleManagerModule.retrieveServices(peripheralId, serviceUUIDs, callback);
+      }
     });
   }
 
@@ -208,7 +274,8 @@ class BleManager {
    * @param serviceUUID The UUID of the service.
    * @param characteristicUUID The UUID of the characteristic.
    * @param data Data to write as an array of numbers (which can be converted from a Uint8Array (ByteArray) using something like [Buffer.toJSON().data](https://github.com/feross/buffer))
-   * @param maxByteSize Optional, defaults to 20
+   * @param maxByteSize Optional, defaults to 0: the negotiated MTU - 3 on Android, `maximumWriteValueLength` on iOS.
+   * @param options Optional, see `WriteOptions`.
    * @returns
    */
   write(
@@ -216,20 +283,111 @@ class BleManager {
     serviceUUID: string,
     characteristicUUID: string,
     data: number[],
-    maxByteSize: number = 20
+    maxByteSize: number = 0,
+    options?: WriteOptions
   ) {
     return new Promise<void>((fulfill, reject) => {
-      BleManagerModule.write(
-        peripheralId,
+      const callback = (error: string | null) => {
+        if (error) {
+          reject(error);
+        } else {
+          fulfill();
+        }
+      };
+      if (options) {
+        BleManagerModule.writeWithOptions(
+          peripheralId,
+          serviceUUID,
+          characteristicUUID,
+          data,
+          maxByteSize,
+          options,
+          callback
+        );
+      } else {
+        BleManagerModule.write(
+          peripheralId,
+          serviceUUID,
+          characteristicUUID,
+          data,
+          maxByteSize,
+          callback
+        );
+      }
+    });
+  }
+
+  /**
+   * Write the same value to the specified characteristic of several connected peripherals at once, you need to call
+   * `retrieveServices` method on each of them before. The writes are dispatched to all the peripherals concurrently;
+   * a failed write does not reject the call, it is reported in the result of its peripheral.
+   *
+   * @param peripheralIds The ids/mac addresses of the peripherals.
+   * @param serviceUUID The UUID of the service.
+   * @param characteristicUUID The UUID of the characteristic.
+   * @param data Data to write as an array of numbers.
+   * @param options Optional, see `WriteManyOptions`.
+   * @returns The result of every peripheral, with timings.
+   */
+  async writeMany(
+    peripheralIds: string[],
+    serviceUUID: string,
+    characteristicUUID: string,
+    data: number[],
+    options: WriteManyOptions = {}
+  ) {
+    if (Platform.OS !== 'android') {
+      const start = Date.now();
+      const results = await Promise.all(
+        peripheralIds.map(async (peripheral) => {
+          try {
+            if (options.withoutResponse) {
+              await this.writeWithoutResponse(
+                peripheral,
+                serviceUUID,
+                characteristicUUID,
+                data,
+                options.maxByteSize
+              );
+            } else {
+              await this.write(
+                peripheral,
+                serviceUUID,
+                characteristicUUID,
+                data,
+                options.maxByteSize
+              );
+            }
+            return { peripheral, duration: Date.now() - start };
+          } catch (error) {
+            return {
+              peripheral,
+              duration: Date.now() - start,
+              error: String(error),
+            };
+          }
+        })
+      );
+      const failed = results.filter((result) => 'error' in result).length;
+      return {
+        results,
+        succeeded: results.length - failed,
+        failed,
+        duration: Date.now() - start,
+      } as WriteManyResult;
+    }
+    return new Promise<WriteManyResult>((fulfill, reject) => {
+      BleManagerModule.writeMany(
+        peripheralIds,
         serviceUUID,
         characteristicUUID,
         data,
-        maxByteSize,
-        (error: string | null) => {
+        options,
+        (error: string | null, result: WriteManyResult | null) => {
           if (error) {
             reject(error);
           } else {
-            fulfill();
+            fulfill(result as WriteManyResult);
           }
         }
       );
@@ -243,8 +401,9 @@ class BleManager {
    * @param serviceUUID The UUID of the service.
    * @param characteristicUUID The UUID of the characteristic.
    * @param data Data to write as an array of numbers (which can be converted from a Uint8Array (ByteArray) using something like [Buffer.toJSON().data](https://github.com/feross/buffer))
-   * @param maxByteSize Optional, defaults to 20
-   * @param queueSleepTime Optional, defaults to 10. Only useful if data length is greater than maxByteSize.
+   * @param maxByteSize Optional, defaults to 0: the negotiated MTU - 3 on Android, `maximumWriteValueLength` on iOS.
+   * @param queueSleepTime Optional, defaults to 10 on iOS and 0 on Android. Only useful if data length is greater than maxByteSize.
+   * On Android each chunk is sent once the stack accepted the previous one, this is only a minimum delay between chunks.
    * @returns
    */
   writeWithoutResponse(
@@ -252,8 +411,8 @@ class BleManager {
     serviceUUID: string,
     characteristicUUID: string,
     data: number[],
-    maxByteSize: number = 20,
-    queueSleepTime: number = 10
+    maxByteSize: number = 0,
+    queueSleepTime: number = Platform.OS === 'android' ? 0 : 10
   ) {
     return new Promise<void>((fulfill, reject) => {
       BleManagerModule.writeWithoutResponse(
@@ -273,6 +432,74 @@ class BleManager {
       );
     });
   }
+  /**
+   * [Android only] Write a large payload (e.g. a firmware image) to the specified characteristic, you need to call `retrieveServices` method before.
+   * The payload is chunked natively and every chunk is queued separately, so other commands to the peripheral can run in between.
+   * Progress is reported with `onWriteStreamProgress`.
+   * 
+   * @param peripheralId The id/mac address of the peripheral.
+   * @param serviceUUID The UUID of the service.
+   * @param characteristicUUID The UUID of the characteristic.
+   * @param source The payload as a base64 string, or a file path when `options.sourceType` is `file`.
+   * @param options Optional, see `WriteStreamOptions`.
+   * @returns
+   */
+  writeStream(
+    peripheralId: string,
+    serviceUUID: string,
+    characteristicUUID: string,
+    source: string,
+    options: WriteStreamOptions = {}
+  ) {
+    return new Promise<WriteStreamResult>((fulfill, reject) => {
+      BleManagerModule.writeStream(
+        peripheralId,
+        serviceUUID,
+        characteristicUUID,
+        source,
+        options,
+        (error: string | null, result: WriteStreamResult | null) => {
+          if (error) {
+            reject(error);
+          } else {
+            fulfill(result as WriteStreamResult);
+          }
+        }
+      );
+    });
+  }
+
+
+  /**
+   * [Android only] Run an ordered list of read, write, notification and descriptor operations as a single command
+   * of the peripheral queue, so no other command interleaves, you need to call `retrieveServices` method before.
+   * By default the transaction stops at the first failed operation.
+   *
+   * @param peripheralId The id/mac address of the peripheral.
+   * @param operations The operations, in execution order.
+   * @param options Optional, see `TransactionOptions`.
+   * @returns The results of the operations that ran, in order.
+   */
+  transaction(
+    peripheralId: string,
+    operations: TransactionOperation[],
+    options: TransactionOptions = {}
+  ) {
+    return new Promise<TransactionResult[]>((fulfill, reject) => {
+      BleManagerModule.transaction(
+        peripheralId,
+        operations,
+        options,
+        (error: string | null, results: TransactionResult[] | null) => {
+          if (error) {
+            reject(error);
+          } else {
+            fulfill(results as TransactionResult[]);
+          }
+        }
+      );
+    });
+  }
 
   /**
    * Attempts to connect to a peripheral. In many case if you can't connect you have to scan for the peripheral before.
@@ -376,26 +603,39 @@ class BleManager {
    * @param peripheralId The id/mac address of the peripheral.
    * @param serviceUUID The UUID of the service.
    * @param characteristicUUID The UUID of the characteristic.
+   * @param options Optional, [Android only] options to tune how notified values are delivered.
    * @returns 
    */
   startNotification(
     peripheralId: string,
     serviceUUID: string,
-    characteristicUUID: string
+    characteristicUUID: string,
+    options?: StartNotificationOptions
   ) {
     return new Promise<void>((fulfill, reject) => {
-      BleManagerModule.startNotification(
-        peripheralId,
-        serviceUUID,
-        characteristicUUID,
-        (error: string | null) => {
-          if (error) {
-            reject(error);
-          } else {
-            fulfill();
-          }
+      const callback = (error: string | null) => {
+        if (error) {
+          reject(error);
+        } else {
+          fulfill();
         }
-      );
+      };
+      if (options) {
+        BleManagerModule.startNotificationWithOptions(
+          peripheralId,
+          serviceUUID,
+          characteristicUUID,
+          options,
+          callback
+        );
+      } else {
+        BleManagerModule.startNotification(
+          peripheralId,
+          serviceUUID,
+          characteristicUUID,
+          callback
+        );
+      }
     });
   }
 
@@ -730,6 +970,46 @@ class BleManager {
     });
   }
 
+  /**
+   * [Android only] Return the runtime counters of a peripheral.
+   * 
+   * @param peripheralId The id/mac address of the peripheral.
+   * @returns
+   */
+  getPeripheralStatistics(peripheralId: string) {
+    return new Promise<PeripheralStatistics>((fulfill, reject) => {
+      BleManagerModule.getPeripheralStatistics(
+        peripheralId,
+        (error: string | null, statistics: PeripheralStatistics | null) => {
+          if (error) {
+            reject(error);
+          } else {
+            fulfill(statistics as PeripheralStatistics);
+          }
+        }
+      );
+    });
+  }
+
+  /**
+   * [Android only] Return the counters of the registry of known peripherals.
+   * 
+   * @returns
+   */
+  getRegistryStatistics() {
+    return new Promise<RegistryStatistics>((fulfill, reject) => {
+      BleManagerModule.getRegistryStatistics(
+        (error: string | null, statistics: RegistryStatistics | null) => {
+          if (error) {
+            reject(error);
+          } else {
+            fulfill(statistics as RegistryStatistics);
+          }
+        }
+      );
+    });
+  }
+
   /**
    * Checks whether the scan is in progress and return `true` or `false`.
    * @returns
@@ -902,7 +1182,7 @@ class BleManager {
   }
 
   /**
-   * [iOS only]
+   * Return the maximum value length for a write of this type.
    * @param peripheralId The id/mac address of the peripheral.
    * @returns
    */
@@ -922,7 +1202,7 @@ class BleManager {
   }
 
   /**
-   * [iOS only]
+   * Return the maximum value length for a write of this type.
    * @param peripheralId The id/mac address of the peripheral.
    * @returns
    */
@@ -948,6 +1228,13 @@ class BleManager {
     return BleManagerModule.onDiscoverPeripheral(callback);
   }
 
+  /**
+   * [Android only] The peripherals discovered during a scan `batchWindow`.
+   */
+  onDiscoverPeripherals(callback: EventCallback<BleDiscoverPeripheralsEvent>): EventSubscription {
+    return BleManagerModule.onDiscoverPeripherals(callback);
+  }
+
   /**
    * The scanning for peripherals is ended.
    */
@@ -955,6 +1242,13 @@ class BleManager {
     return BleManagerModule.onStopScan(callback);
   }
 
+  /**
+   * [Android only] A scan start was delayed to stay within the platform scan start quota.
+   */
+  onScanBackoff(callback: EventCallback<BleScanBackoffEvent>): EventSubscription {
+    return BleManagerModule.onScanBackoff(callback);
+  }
+
   /**
    * The BLE state changed.
    */
@@ -985,6 +1279,22 @@ class BleManager {
     return BleManagerModule.onDidUpdateValueForCharacteristic(callback);
   }
 
+  /**
+   * [Android only] A batch of notified values for a characteristic.
+   * 
+   * > Event will only be emitted after successful `startNotification` with the `batch` option.
+   */
+  onDidUpdateValuesForCharacteristic(callback: EventCallback<BleManagerDidUpdateValuesForCharacteristicEvent>): EventSubscription {
+    return BleManagerModule.onDidUpdateValuesForCharacteristic(callback);
+  }
+
+  /**
+   * [Android only] Progress of a `writeStream`.
+   */
+  onWriteStreamProgress(callback: EventCallback<BleWriteStreamProgressEvent>): EventSubscription {
+    return BleManagerModule.onWriteStreamProgress(callback);
+  }
+
   /**
    * A bond with a peripheral was established.
    */
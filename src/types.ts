@@ -76,6 +76,29 @@ export interface StartOptions {
    * [Android only] Force to use the LegacyScanManager
    */
   forceLegacy?: boolean;
+  /**
+   * [Android only] Number of dedicated threads running the GATT callbacks and command queues of the peripherals.
+   * Each peripheral is pinned to one thread, so its commands stay ordered.
+   * Defaults to `0`, the work runs on the main looper.
+   */
+  gattThreads?: number;
+  /**
+   * [Android only] Time (ms) a GATT command may wait for its answer from the Bluetooth stack before it is failed
+   * with a timeout error and the command queue of the peripheral moves on. Defaults to `0`, no timeout.
+   * Only `write`, `writeMany` and `transaction` can override it per call; reads, descriptor reads and
+   * notification changes always use this value.
+   */
+  commandTimeout?: number;
+  /**
+   * [Android only] Maximum number of peripherals kept in the registry of known peripherals. Beyond it the least
+   * recently used peripherals that are not connected are evicted. Defaults to `0`, no limit.
+   */
+  maxPeripherals?: number;
+  /**
+   * [Android only] Time (ms) after which a peripheral that has not been seen by a scan and is not connected is evicted
+   * from the registry of known peripherals. Defaults to `0`, no expiry.
+   */
+  peripheralTtl?: number;
 }
 
 export interface ConnectOptions {
@@ -164,17 +187,382 @@ export interface ScanOptions {
    * `manufacturerId` usually matches the company id, can be given as a hex, e.g. 0xe4f7.
    * `manufacturerData` and `manufacturerDataMask` must have the same length. For any bit in the mask, set it to 1 if
    * it needs to match the one in manufacturer data, otherwise set it to 0.
+   * Pass an array to match any of several filters.
    * https://developer.android.com/reference/android/bluetooth/le/ScanFilter.Builder#setManufacturerData(int,%20byte[],%20byte[])
    */
-  manufacturerData?: {
-    manufacturerId: number;
-    manufacturerData?: number[];
-    manufacturerDataMask?: number[];
-  };
+  manufacturerData?: ManufacturerDataScanFilter | ManufacturerDataScanFilter[];
+  /**
+   * [Android only] Filters scan results by service data.
+   * `serviceData` and `serviceDataMask` must have the same length, the mask works like `manufacturerDataMask`.
+   * Pass an array to match any of several filters.
+   * https://developer.android.com/reference/android/bluetooth/le/ScanFilter.Builder#setServiceData(android.os.ParcelUuid,%20byte[],%20byte[])
+   */
+  serviceData?: ServiceDataScanFilter | ServiceDataScanFilter[];
   /**
    * [Android O+] Deliver scan results using a PendingIntent instead of the default callback.
    */
   useScanIntent?: boolean;
+  /**
+   * [Android only] Minimum time (ms) between two `onDiscoverPeripheral` events for the same peripheral.
+   * Advertisements received in between are dropped natively. Defaults to `0` (no limit).
+   */
+  minEmitInterval?: number;
+  /**
+   * [Android only] Only emit an advertisement of an already reported peripheral if its payload changed,
+   * or if its RSSI moved by at least `rssiThreshold`. Defaults to `false`.
+   */
+  emitOnChange?: boolean;
+  /**
+   * [Android only] RSSI change (dBm) that counts as a change for `emitOnChange`.
+   * Defaults to `0`, RSSI changes alone are not emitted.
+   */
+  rssiThreshold?: number;
+  /**
+   * [Android only] Collect discovered peripherals for this many ms and deliver them together in
+   * `onDiscoverPeripherals` instead of one `onDiscoverPeripheral` event each.
+   * A peripheral seen several times within the window is delivered once, with its latest data.
+   * Defaults to `0` (no batching).
+   */
+  batchWindow?: number;
+  /**
+   * [Android only] With `reportDelay`, deliver each batch of results reported by the controller as a single
+   * `onDiscoverPeripherals` event, one entry per peripheral with its latest data, instead of one
+   * `onDiscoverPeripheral` event per result. Defaults to `false`.
+   */
+  compactBatches?: boolean;
+  /**
+   * [Android only] Rules checked natively against every scan result, results that do not match all of them
+   * are dropped before reaching JS.
+   */
+  filter?: ScanResultFilter;
+  /**
+   * [Android only] Scan for `window` ms out of every `interval` ms until the scan is stopped or `seconds` elapse.
+   * The scanner is paused and resumed natively, `window` must be shorter than `interval`.
+   */
+  dutyCycle?: {
+    window: number;
+    interval: number;
+  };
+  /**
+   * [Android only] With `dutyCycle`, scan the next window in `lowLatency` mode while new peripherals keep
+   * being discovered and in `lowPower` mode once a window found nothing new. A peripheral not seen during the
+   * last three duty cycle intervals counts as new again. Overrides `scanMode`.
+   */
+  adaptiveScanMode?: boolean;
+}
+
+export interface ManufacturerDataScanFilter {
+  manufacturerId: number;
+  manufacturerData?: number[];
+  manufacturerDataMask?: number[];
+}
+
+export interface ServiceDataScanFilter {
+  serviceUUID: string;
+  serviceData?: number[];
+  serviceDataMask?: number[];
+}
+
+/**
+ * [Android only] Every rule that is set must match for a scan result to be reported.
+ */
+export interface ScanResultFilter {
+  /**
+   * Minimum RSSI (dBm).
+   */
+  minRssi?: number;
+  /**
+   * Prefix of the advertised local name.
+   */
+  namePrefix?: string;
+  /**
+   * Regular expression searched in the advertised local name.
+   */
+  nameRegex?: string;
+  /**
+   * Service data of `serviceUUID` must start with `serviceData`. For any bit in the optional `serviceDataMask`,
+   * set it to 1 if it needs to match the one in `serviceData`, otherwise set it to 0.
+   * `serviceData` and `serviceDataMask` must have the same length.
+   */
+  serviceData?: ServiceDataScanFilter;
+  /**
+   * The advertisement must contain manufacturer data of one of these ids.
+   */
+  manufacturerIds?: number[];
+  /**
+   * Only report these peripheral ids.
+   */
+  allowAddresses?: string[];
+  /**
+   * Never report these peripheral ids.
+   */
+  denyAddresses?: string[];
+}
+
+export interface StartNotificationOptions {
+  /**
+   * [Android only] The capacity of the buffer (bytes) stored before emitting the data for the characteristic.
+   * Same behavior as `startNotificationWithBuffer`. Defaults to `1` (no buffering).
+   */
+  bufferLength?: number;
+  /**
+   * [Android only] How notified values are delivered in `onDidUpdateValueForCharacteristic`.
+   * `array` (default) fills `value` with one number per byte.
+   * `base64` leaves `value` empty and sends the payload as a base64 string in `data`,
+   * which is much cheaper to move across the bridge for high notification rates.
+   */
+  valueFormat?: NotificationValueFormat;
+  /**
+   * [Android only] What happens when buffered notifications arrive faster than they are emitted,
+   * only used with `bufferLength`. Defaults to `dropOldest`, which discards whole `bufferLength` chunks.
+   * `block` waits up to 20 ms for room before dropping the packet, stalling every BLE callback meanwhile.
+   */
+  overflow?: NotificationOverflowPolicy;
+  /**
+   * [Android only] Coalesce notified packets and deliver them together in `onDidUpdateValuesForCharacteristic`
+   * instead of one `onDidUpdateValueForCharacteristic` event per packet. Can not be combined with `bufferLength`.
+   */
+  batch?: NotificationBatchOptions;
+}
+
+export interface NotificationBatchOptions {
+  /**
+   * Maximum number of packets in a batch. Defaults to `32`.
+   */
+  maxCount?: number;
+  /**
+   * Maximum number of bytes in a batch. Defaults to `4096`.
+   */
+  maxBytes?: number;
+  /**
+   * Maximum time (ms) the first packet of a batch waits before the batch is emitted. Defaults to `16`.
+   * `0` disables the deadline, batches are then only emitted when `maxCount` or `maxBytes` is reached.
+   */
+  maxLatency?: number;
+}
+
+export type NotificationValueFormat = 'array' | 'base64';
+
+export type NotificationOverflowPolicy = 'dropOldest' | 'dropNewest' | 'block';
+
+/**
+ * [Android only]
+ */
+export interface PeripheralStatistics {
+  /**
+   * bytes dropped by the notification buffers of this peripheral because of `overflow`
+   */
+  droppedNotificationBytes: number;
+  /**
+   * commands waiting in the command queue, including the running one
+   */
+  commandQueueDepth: number;
+  commandsExecuted: number;
+  /**
+   * commands rejected because their `timeout` elapsed before they could run
+   */
+  commandsExpired: number;
+  /**
+   * average time (ms) a command waited in the queue before it ran
+   */
+  averageCommandWaitTime: number;
+  maxCommandWaitTime: number;
+  /**
+   * commands failed because the Bluetooth stack did not answer within `commandTimeout`
+   */
+  commandTimeouts: number;
+}
+
+/**
+ * [Android only]
+ */
+export interface RegistryStatistics {
+  /**
+   * peripherals currently known
+   */
+  peripheralCount: number;
+  /**
+   * peripherals evicted because of `maxPeripherals` or `peripheralTtl`
+   */
+  evictions: number;
+}
+
+export interface RetrieveServicesOptions {
+  /**
+   * [Android only] Leave out the permissions and descriptors of the characteristics, for callers that only need
+   * the UUIDs and properties. Defaults to `false`.
+   */
+  slim?: boolean;
+}
+
+export interface WriteOptions {
+  /**
+   * [Android only] Send the chunks as prepared writes (`beginReliableWrite` / `executeReliableWrite`):
+   * the peripheral queues every chunk and the whole payload is committed at once, or discarded on error.
+   * On iOS values longer than the MTU are always sent as a long write by CoreBluetooth.
+   */
+  reliable?: boolean;
+  /**
+   * [Android only] Priority class of the write in the peripheral command queue. Defaults to `interactive`.
+   */
+  priority?: CommandPriority;
+  /**
+   * [Android only] Time (ms) the write may wait in the command queue before it is rejected without being sent.
+   * Defaults to `0`, wait forever.
+   */
+  timeout?: number;
+  /**
+   * [Android only] Time (ms) the write may run before it is failed, overrides the `commandTimeout` start option.
+   * `0` disables the timeout for this write.
+   */
+  commandTimeout?: number;
+}
+
+/**
+ * Commands of a peripheral run by priority class, then in submission order.
+ * `control` is used for MTU and connection priority requests, `bulk` for `writeStream` chunks.
+ */
+export type CommandPriority = 'control' | 'interactive' | 'bulk';
+
+export interface WriteStreamOptions {
+  /**
+   * How `source` is interpreted: a base64 string (default) or the path of a file to read.
+   */
+  sourceType?: 'base64' | 'file';
+  /**
+   * Bytes per chunk. Defaults to the negotiated MTU - 3.
+   */
+  chunkSize?: number;
+  /**
+   * Use write with response for every chunk. Defaults to `false` (write without response).
+   */
+  withResponse?: boolean;
+  /**
+   * Minimum time (ms) between two `onWriteStreamProgress` events. Defaults to `250`.
+   */
+  progressInterval?: number;
+}
+
+export interface ReadManyItem {
+  service: string;
+  characteristic: string;
+}
+
+export interface ReadManyResult extends ReadManyItem {
+  /**
+   * the value read, unset if the read failed
+   */
+  value?: number[];
+  /**
+   * why the characteristic could not be read, unset if the read succeeded
+   */
+  error?: string;
+}
+
+export type TransactionOperationType =
+  | 'read'
+  | 'write'
+  | 'writeWithoutResponse'
+  | 'startNotification'
+  | 'stopNotification'
+  | 'readDescriptor'
+  | 'writeDescriptor';
+
+export interface TransactionOperation {
+  type: TransactionOperationType;
+  service: string;
+  characteristic: string;
+  /**
+   * required by `readDescriptor` and `writeDescriptor`
+   */
+  descriptor?: string;
+  /**
+   * value of the writes, it must fit in a single write: values are not chunked inside a transaction
+   */
+  data?: number[];
+}
+
+export interface TransactionOptions {
+  /**
+   * Run the remaining operations after a failed one instead of stopping. Defaults to `false`.
+   */
+  continueOnError?: boolean;
+  /**
+   * Priority class of the transaction in the peripheral command queue. Defaults to `interactive`.
+   */
+  priority?: CommandPriority;
+  /**
+   * Time (ms) the transaction may wait in the command queue before it is rejected without being run.
+   * Defaults to `0`, wait forever.
+   */
+  timeout?: number;
+  /**
+   * Time (ms) each operation may run before the transaction is failed, overrides the `commandTimeout` start option.
+   */
+  commandTimeout?: number;
+}
+
+export interface TransactionResult extends ReadManyResult {
+  type: TransactionOperationType;
+  descriptor?: string;
+}
+
+export interface WriteManyOptions {
+  /**
+   * Write without response. Defaults to `false`.
+   */
+  withoutResponse?: boolean;
+  /**
+   * Chunk size, defaults to `0`: the negotiated MTU - 3 of each peripheral on Android, `maximumWriteValueLength` on iOS.
+   */
+  maxByteSize?: number;
+  /**
+   * [Android only] Priority class of the writes in the peripheral command queues. Defaults to `interactive`.
+   */
+  priority?: CommandPriority;
+  /**
+   * [Android only] Time (ms) a write may wait in its peripheral command queue before it fails without being sent.
+   * Defaults to `0`, wait forever.
+   */
+  timeout?: number;
+  /**
+   * [Android only] Time (ms) a write may run before it fails, overrides the `commandTimeout` start option.
+   */
+  commandTimeout?: number;
+}
+
+export interface WriteManyPeripheralResult {
+  peripheral: string;
+  /**
+   * time (ms) from the dispatch of the writes to the completion of this one
+   */
+  duration: number;
+  /**
+   * why the write failed, unset if it succeeded
+   */
+  error?: string;
+}
+
+export interface WriteManyResult {
+  /**
+   * one result per peripheral, in the requested order
+   */
+  results: WriteManyPeripheralResult[];
+  succeeded: number;
+  failed: number;
+  /**
+   * time (ms) from the dispatch of the writes to the completion of the last one
+   */
+  duration: number;
+}
+
+export interface WriteStreamResult {
+  bytesWritten: number;
+  /**
+   * time (ms) from the first to the last chunk
+   */
+  duration: number;
+  bytesPerSecond: number;
 }
 
 export interface CompanionScanOptions {
@@ -277,6 +665,16 @@ export interface PeripheralInfo extends Peripheral {
 
 export type EventCallback<T> = (event: T) => void | Promise<void>;
 
+/**
+ * [Android only]
+ */
+export interface BleScanBackoffEvent {
+  /**
+   * time (ms) until the scanner is started
+   */
+  readonly delay: number;
+}
+
 export interface BleStopScanEvent {
   /**
    * [iOS] The reason for stopping the scan. Error code 10 is used for timeouts, 0 covers everything else.
@@ -307,6 +705,23 @@ export interface BleConnectPeripheralEvent {
 
 export type BleDiscoverPeripheralEvent = Peripheral;
 
+export interface DiscoveredPeripheral extends Peripheral {
+  /**
+   * number of advertisements merged into this entry
+   */
+  count: number;
+}
+
+/**
+ * [Android only]
+ */
+export interface BleDiscoverPeripheralsEvent {
+  /**
+   * the peripherals discovered during the batch window or in the reported batch
+   */
+  readonly peripherals: DiscoveredPeripheral[];
+}
+
 /**
  * [Android only]
  */
@@ -347,8 +762,75 @@ export interface BleManagerDidUpdateValueForCharacteristicEvent {
   /**
    * data as an array of numbers (which can be converted back to a Uint8Array (ByteArray),
    * using something like [Buffer.from()](https://github.com/feross/buffer))
+   *
+   * Empty when the notification was started with `valueFormat: 'base64'`, see `data`.
    */
   readonly value: number[];
+  /**
+   * [Android only] base64-encoded string of the data, only set when the notification was started with `valueFormat: 'base64'`.
+   */
+  readonly data?: string;
+}
+
+/**
+ * [Android only]
+ */
+export interface BleManagerDidUpdateValuesForCharacteristicEvent {
+  /**
+   * characteristic UUID
+   */
+  readonly characteristic: string;
+  /**
+   * peripheral id
+   */
+  readonly peripheral: string;
+  /**
+   * service UUID
+   */
+  readonly service: string;
+  /**
+   * notified packets, oldest first
+   */
+  readonly values: BleNotifiedValue[];
+}
+
+export interface BleNotifiedValue {
+  /**
+   * data as an array of numbers, empty when the notification was started with `valueFormat: 'base64'`
+   */
+  readonly value: number[];
+  /**
+   * base64-encoded string of the data, only set when the notification was started with `valueFormat: 'base64'`
+   */
+  readonly data?: string;
+  /**
+   * time the packet was received, in ms since epoch
+   */
+  readonly timestamp: number;
+}
+
+/**
+ * [Android only]
+ */
+export interface BleWriteStreamProgressEvent {
+  /**
+   * peripheral id
+   */
+  readonly peripheral: string;
+  /**
+   * characteristic UUID
+   */
+  readonly characteristic: string;
+  /**
+   * service UUID
+   */
+  readonly service: string;
+  readonly bytesWritten: number;
+  readonly totalBytes: number;
+  /**
+   * average throughput since the start of the stream
+   */
+  readonly bytesPerSecond: number;
 }
 
 /**